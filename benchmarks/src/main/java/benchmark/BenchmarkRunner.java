@@ -0,0 +1,40 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC and allocation profiler enabled. Takes the
+ * same arguments as the JMH command line, for example:
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar GraphMapBenchmark -p size=256x256
+ * </pre>
+ * 
+ * @author Brian Nakayama
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args
+	 *            JMH command line arguments
+	 * @throws CommandLineOptionException
+	 *             If the arguments cannot be parsed
+	 * @throws RunnerException
+	 *             If a benchmark fails
+	 */
+	public static void main(String[] args) throws CommandLineOptionException,
+			RunnerException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
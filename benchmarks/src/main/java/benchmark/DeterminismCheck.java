@@ -0,0 +1,162 @@
+package benchmark;
+
+import graph.GraphMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays the same seeded game in several JVMs with eight workers each, and
+ * checks that every run ends with the same state. A tiled game may be updated
+ * in a different thread order every time, so this finds states whose result
+ * depends on which tile ran first. Takes the map type, size, tile size,
+ * whether frames are synchronous, the density of entities, the number of
+ * frames and the number of runs, for example:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmark.DeterminismCheck graph.HexagonMap 120x90 2 true 0.25 600 8
+ * </pre>
+ *
+ * @author Brian Nakayama
+ * @see graph.CellStore#hashState()
+ */
+public class DeterminismCheck {
+
+	/**
+	 * The number of workers each run updates tiles with.
+	 */
+	public static final int PARALLELISM = 8;
+
+	/**
+	 * The number of frames between moves of the mouse.
+	 */
+	public static final int MOUSE_FRAMES = 20;
+
+	/**
+	 * The argument that makes a JVM play one run and print its result.
+	 */
+	private static final String PLAY = "-play";
+
+	/**
+	 * Plays a seeded game on a map built by MapBuilder. The mouse moves to a
+	 * new seeded position every MOUSE_FRAMES frames.
+	 *
+	 * @param type
+	 *            The class of the map
+	 * @param size
+	 *            The size of the map, such as "120x90"
+	 * @param tileSize
+	 *            The width of a tile, or 0 to update the map in order
+	 * @param synchronous
+	 *            True iff frames are synchronous
+	 * @param density
+	 *            The fraction of cells holding an entity
+	 * @param frames
+	 *            The most frames to play
+	 * @return The number of frames played and the hash of the final state
+	 */
+	public static String play(String type, String size, int tileSize,
+			boolean synchronous, double density, int frames) {
+		GraphMap map = MapBuilder.createMap(type, size, density, 20);
+		if (tileSize > 0) {
+			map.setTileSize(tileSize);
+		}
+		map.setSynchronous(synchronous);
+		Random mouse = new Random(MapBuilder.SEED);
+		int frame = 0;
+		for (; frame < frames && !map.isGameOver(); frame++) {
+			if (frame % MOUSE_FRAMES == 0) {
+				map.updateMouse(mouse.nextInt(map.getPixelWidth()),
+						mouse.nextInt(map.getPixelHeight()));
+			}
+			map.update();
+		}
+		return frame + " " + map.getStore().hashState();
+	}
+
+	/**
+	 * Plays one run in a new JVM with PARALLELISM workers.
+	 *
+	 * @param game
+	 *            The arguments describing the game
+	 * @return The line the run printed
+	 * @throws IOException
+	 *             If the JVM cannot be started or fails
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for the JVM
+	 */
+	private static String fork(String[] game) throws IOException,
+			InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		command.add("-Djava.awt.headless=true");
+		command.add("-Djava.util.concurrent.ForkJoinPool.common.parallelism="
+				+ PARALLELISM);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DeterminismCheck.class.getName());
+		command.add(PLAY);
+		command.addAll(Arrays.asList(game));
+		Process process = new ProcessBuilder(command).redirectErrorStream(
+				true).start();
+		String result = null;
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				process.getInputStream()))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				result = line;
+			}
+		}
+		if (process.waitFor() != 0) {
+			throw new IOException("A run failed: " + result);
+		}
+		return result;
+	}
+
+	/**
+	 * Plays the game in separate JVMs and compares their results.
+	 *
+	 * @param args
+	 *            The map type, size, tile size, synchronous, density, frames
+	 *            and runs
+	 * @throws IOException
+	 *             If a run cannot be started or fails
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for a run
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length == 7 && PLAY.equals(args[0])) {
+			System.out.println(play(args[1], args[2],
+					Integer.parseInt(args[3]), Boolean.parseBoolean(args[4]),
+					Double.parseDouble(args[5]), Integer.parseInt(args[6])));
+			return;
+		}
+		if (args.length != 7) {
+			System.out.println("Usage: DeterminismCheck <map class> <size> "
+					+ "<tile size> <synchronous> <density> <frames> <runs>");
+			return;
+		}
+		String[] game = Arrays.copyOf(args, 6);
+		int runs = Integer.parseInt(args[6]);
+		String first = null;
+		for (int run = 0; run < runs; run++) {
+			String result = fork(game);
+			System.out.println("Run " + run + ": " + result);
+			if (first == null) {
+				first = result;
+			} else if (!first.equals(result)) {
+				System.out.println("The runs played differently.");
+				System.exit(1);
+			}
+		}
+		System.out.println("Every run played the same.");
+	}
+}
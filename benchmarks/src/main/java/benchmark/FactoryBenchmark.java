@@ -0,0 +1,96 @@
+package benchmark;
+
+import graph.GraphMap;
+import graph.GraphMapFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a map file with a GraphMapFactory.
+ * 
+ * @author Brian Nakayama
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class FactoryBenchmark {
+
+	/**
+	 * The class name of the map.
+	 */
+	@Param({ "graph.SquareMap", "graph.HexagonMap", "graph.TriangleMap" })
+	public String type;
+
+	/**
+	 * The width and height of the map in cells.
+	 */
+	@Param({ "25x19", "256x256", "1024x1024", "4096x4096" })
+	public String size;
+
+	/**
+	 * The fraction of cells holding a wall, food or a crab.
+	 */
+	@Param({ "0.0", "0.05", "0.25" })
+	public double density;
+
+	/**
+	 * The map file being loaded.
+	 */
+	private File file;
+
+	/**
+	 * Writes the map file.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	@Setup(Level.Trial)
+	public void writeMap() throws IOException {
+		file = File.createTempFile("map", ".txt");
+		PrintWriter writer = new PrintWriter(file);
+		writer.println("color.RandomGreenGenerator");
+		writer.println(type + " 20 true");
+		for (String row : MapBuilder.createDescriptor(size, density)) {
+			writer.println(row);
+		}
+		writer.close();
+	}
+
+	/**
+	 * Deletes the map file.
+	 */
+	@TearDown(Level.Trial)
+	public void deleteMap() {
+		file.delete();
+	}
+
+	/**
+	 * Measures loading the map file.
+	 * 
+	 * @return The map
+	 */
+	@Benchmark
+	public GraphMap createGraphMap() {
+		return new GraphMapFactory(file.getPath()).createGraphMap();
+	}
+}
@@ -0,0 +1,174 @@
+package benchmark;
+
+import graph.Cell;
+import graph.GraphMap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the simulation hot paths of a GraphMap: a whole frame, flooding
+ * the distances from the mouse, and choosing a cell closer to the mouse.
+ * 
+ * @author Brian Nakayama
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class GraphMapBenchmark {
+
+	/**
+	 * The distance in pixels between cells.
+	 */
+	private static final int DISTANCE = 20;
+
+	/**
+	 * The number of frames between moves of the mouse, as when playing.
+	 */
+	private static final int MOUSE_TICKS = 20;
+
+	/**
+	 * The class name of the map.
+	 */
+	@Param({ "graph.SquareMap", "graph.HexagonMap", "graph.TriangleMap" })
+	public String type;
+
+	/**
+	 * The width and height of the map in cells.
+	 */
+	@Param({ "25x19", "256x256", "1024x1024", "4096x4096" })
+	public String size;
+
+	/**
+	 * The fraction of cells holding a wall, food or a crab.
+	 */
+	@Param({ "0.0", "0.05", "0.25" })
+	public double density;
+
+	/**
+	 * The map being measured.
+	 */
+	private GraphMap map;
+
+	/**
+	 * The cell under the mouse when flooding distances.
+	 */
+	private Cell center;
+
+	/**
+	 * A cell next to the center.
+	 */
+	private Cell neighbor;
+
+	/**
+	 * Moves the mouse while updating.
+	 */
+	private Random random;
+
+	/**
+	 * The number of frames updated.
+	 */
+	private int ticks;
+
+	/**
+	 * Builds the map and floods the distances from its center.
+	 */
+	@Setup(Level.Trial)
+	public void createMap() {
+		startGame();
+		int x = map.getPixelWidth() / 2;
+		int y = map.getPixelHeight() / 2;
+		center = map.selectClosestCell(x, y);
+		neighbor = map.selectClosestCell(x + DISTANCE, y);
+		center.updateMouseDistance();
+	}
+
+	/**
+	 * Builds a new map and plays it from the first frame.
+	 */
+	private void startGame() {
+		map = MapBuilder.createMap(type, size, density, DISTANCE);
+		random = new Random(MapBuilder.SEED);
+		ticks = 0;
+	}
+
+	/**
+	 * Measures one frame of the game. Updating a finished game does nothing,
+	 * so a new game is started outside the measurement when the snake gets
+	 * stuck.
+	 * 
+	 * @param restart
+	 *            Starts a new game before the frame if needed
+	 * @return The map, so the update is not optimized away
+	 */
+	@Benchmark
+	public GraphMap update(Restart restart) {
+		if (ticks++ % MOUSE_TICKS == 0) {
+			map.updateMouse(random.nextInt(map.getPixelWidth()),
+					random.nextInt(map.getPixelHeight()));
+		}
+		map.update();
+		return map;
+	}
+
+	/**
+	 * Measures flooding the distances from the mouse across the map.
+	 * 
+	 * @return The distance of the center
+	 */
+	@Benchmark
+	public int updateMouseDistance() {
+		map.clearAllDistances();
+		center.updateMouseDistance();
+		return center.getMouseDistance();
+	}
+
+	/**
+	 * Measures choosing a neighbor closer to the mouse.
+	 * 
+	 * @return The chosen cell
+	 */
+	@Benchmark
+	public Cell getRandomCloser() {
+		return neighbor.getRandomCloser();
+	}
+
+	/**
+	 * Starts a new game before a frame of update if the last one ended. On
+	 * dense maps a snake can get stuck within a few dozen frames, so no
+	 * fixed number of frames per iteration would always stay in one game.
+	 * This is its own state so that only update pays for the check.
+	 */
+	@State(Scope.Thread)
+	public static class Restart {
+
+		/**
+		 * Starts a new game if the benchmark's game has ended.
+		 * 
+		 * @param benchmark
+		 *            The benchmark whose game is checked
+		 */
+		@Setup(Level.Invocation)
+		public void restart(GraphMapBenchmark benchmark) {
+			if (benchmark.map.isGameOver()) {
+				benchmark.startGame();
+			}
+		}
+	}
+}
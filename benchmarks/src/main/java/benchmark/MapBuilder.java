@@ -0,0 +1,108 @@
+package benchmark;
+
+import graph.GraphMap;
+import main.Config;
+
+import java.util.Random;
+
+/**
+ * Builds the maps used by the benchmarks. Maps are generated from a fixed
+ * seed, and Config.RANDOM is seeded before each map is created, so every run
+ * measures the same map and plays the same game.
+ * 
+ * @author Brian Nakayama
+ */
+public class MapBuilder {
+
+	/**
+	 * The characters placed at random in a map, in equal proportion: walls,
+	 * food and crabs.
+	 */
+	private static final char[] ENTITIES = { '#', 'F', 'D' };
+
+	/**
+	 * The seed for generating maps.
+	 */
+	public static final long SEED = 42;
+
+	/**
+	 * Get the width of a size parameter such as "25x19".
+	 * 
+	 * @param size
+	 *            The width and height separated by an x
+	 * @return The width in cells
+	 */
+	public static int getWidth(String size) {
+		return Integer.parseInt(size.substring(0, size.indexOf('x')));
+	}
+
+	/**
+	 * Get the height of a size parameter such as "25x19".
+	 * 
+	 * @param size
+	 *            The width and height separated by an x
+	 * @return The height in cells
+	 */
+	public static int getHeight(String size) {
+		return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+	}
+
+	/**
+	 * Creates the rows of a map with a snake in the middle and entities
+	 * scattered at random.
+	 * 
+	 * @param size
+	 *            The width and height separated by an x
+	 * @param density
+	 *            The fraction of cells holding an entity
+	 * @return The rows of the map
+	 */
+	public static String[] createDescriptor(String size, double density) {
+		int width = getWidth(size);
+		int height = getHeight(size);
+		Random random = new Random(SEED);
+		String[] rows = new String[height];
+		char[] row = new char[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (random.nextDouble() < density) {
+					row[x] = ENTITIES[random.nextInt(ENTITIES.length)];
+				} else {
+					row[x] = '-';
+				}
+			}
+			if (y == height / 2) {
+				row[width / 2] = 'S';
+			}
+			rows[y] = new String(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Creates and initializes a map.
+	 * 
+	 * @param type
+	 *            The class name of a GraphMap, such as graph.SquareMap
+	 * @param size
+	 *            The width and height separated by an x
+	 * @param density
+	 *            The fraction of cells holding an entity
+	 * @param distance
+	 *            The distance in pixels between cells
+	 * @return The map
+	 */
+	public static GraphMap createMap(String type, String size, double density,
+			int distance) {
+		GraphMap map;
+		Config.RANDOM.setSeed(SEED);
+		try {
+			map = (GraphMap) Class.forName(type).newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Unable to create a " + type + ".");
+		}
+		map.setDistance(distance);
+		map.initialize(createDescriptor(size, density));
+		return map;
+	}
+}
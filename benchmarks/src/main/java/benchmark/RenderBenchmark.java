@@ -0,0 +1,138 @@
+package benchmark;
+
+import graph.GraphMap;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import main.Renderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what View.update() does each frame, updating the map and drawing
+ * it, onto an off screen image so no window is needed. Cells are drawn small
+ * so the largest map still fits in an image.
+ * 
+ * @author Brian Nakayama
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class RenderBenchmark {
+
+	/**
+	 * The class name of the map.
+	 */
+	@Param({ "graph.SquareMap", "graph.HexagonMap", "graph.TriangleMap" })
+	public String type;
+
+	/**
+	 * The width and height of the map in cells.
+	 */
+	@Param({ "25x19", "256x256", "1024x1024" })
+	public String size;
+
+	/**
+	 * The fraction of cells holding a wall, food or a crab.
+	 */
+	@Param({ "0.0", "0.05", "0.25" })
+	public double density;
+
+	/**
+	 * The distance in pixels between cells.
+	 */
+	@Param({ "4" })
+	public int distance;
+
+	/**
+	 * The map being drawn.
+	 */
+	private GraphMap map;
+
+	/**
+	 * Draws the map.
+	 */
+	private Renderer renderer;
+
+	/**
+	 * The image drawn onto.
+	 */
+	private BufferedImage image;
+
+	/**
+	 * Draws onto the image.
+	 */
+	private Graphics2D g2D;
+
+	/**
+	 * Builds the map and the image.
+	 */
+	@Setup(Level.Trial)
+	public void createMap() {
+		map = MapBuilder.createMap(type, size, density, distance);
+		renderer = new Renderer(map, false);
+		image = new BufferedImage(map.getPixelWidth(), map.getPixelHeight(),
+				BufferedImage.TYPE_INT_RGB);
+		g2D = image.createGraphics();
+	}
+
+	/**
+	 * Releases the graphics.
+	 */
+	@TearDown(Level.Trial)
+	public void dispose() {
+		g2D.dispose();
+	}
+
+	/**
+	 * Measures one frame of the view: updating and drawing the map.
+	 * 
+	 * @return The image
+	 */
+	@Benchmark
+	public BufferedImage update() {
+		map.update();
+		renderer.render(g2D);
+		return image;
+	}
+
+	/**
+	 * Measures one frame of the view drawing only what changed.
+	 * 
+	 * @return The bounds of the area drawn
+	 */
+	@Benchmark
+	public Rectangle updateChanges() {
+		map.update();
+		return renderer.renderChanges(g2D);
+	}
+
+	/**
+	 * Measures drawing the map without updating it.
+	 * 
+	 * @return The image
+	 */
+	@Benchmark
+	public BufferedImage render() {
+		renderer.render(g2D);
+		return image;
+	}
+}
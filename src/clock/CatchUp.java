@@ -0,0 +1,21 @@
+package clock;
+
+/**
+ * What a fixed step Clock does with the steps it missed after an update runs
+ * late.
+ * 
+ * @author Brian Nakayama
+ * @see clock.Clock#setCatchUp(CatchUp)
+ */
+public enum CatchUp {
+	/**
+	 * Run the missed steps back to back, up to the Clock's limit, so the
+	 * number of updates keeps up with the time passed.
+	 */
+	RUN,
+	/**
+	 * Skip the missed steps and carry on from the current time. Updates slow
+	 * down instead of bunching up.
+	 */
+	DROP
+}
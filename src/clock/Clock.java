@@ -1,10 +1,18 @@
 package clock;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * The Clock class simply takes an Updatable, and calls update preiodically according to a given FPS value.
  * 
  * &nbsp;&nbsp;&nbsp;&nbsp; This class sets up the nitty gritty details for a
  * refreshing frame in use for a game or other simulation.  * 
+ * <p>
+ * In fixed step mode the clock keeps time in nanoseconds with an accumulator,
+ * so it neither drifts nor loses the time an update overruns by. It parks
+ * until shortly before the next step is due, and can spin for the rest to
+ * reach high and steady rates.
+ * 
  * @author Brian Nakayama
  * @version 1.8 Removed all UI related code, renamed to Clock.
  * @version 1.7 FSEM implemented for init() method.
@@ -24,6 +32,16 @@ public class Clock implements Runnable {
 	private Updatable u;
 	// The JFrame for FSM mode.
 	private volatile Thread t;
+	// Informs the Thread loop whether to pace updates in fixed steps.
+	private volatile boolean bFixedStep = false;
+	// What to do with steps missed when an update runs late.
+	private volatile CatchUp catchUp = CatchUp.DROP;
+	// The most missed steps to run at once when catching up.
+	private volatile int iMaxCatchUp = 5;
+	// The nanoseconds before a step to stop parking and spin instead.
+	private volatile long lSpinNanos = 0;
+	// The number of steps dropped since the clock was created.
+	private volatile long lDropped = 0;
 
 
 	/**
@@ -69,6 +87,61 @@ public class Clock implements Runnable {
 		this.fFps = fFps;
 	}
 
+	/**
+	 * Sets whether updates are paced in fixed steps of 1 / FPS seconds,
+	 * measured in nanoseconds. A running clock switches at its next update.
+	 * 
+	 * @param bFixedStep
+	 *            True for fixed steps
+	 */
+	public void setFixedStep(boolean bFixedStep) {
+		this.bFixedStep = bFixedStep;
+	}
+
+	/**
+	 * Sets what a fixed step clock does with the steps missed when an update
+	 * runs late.
+	 * 
+	 * @param catchUp
+	 *            The catch up policy
+	 */
+	public void setCatchUp(CatchUp catchUp) {
+		this.catchUp = catchUp;
+	}
+
+	/**
+	 * Sets the most missed steps a fixed step clock runs at once when
+	 * catching up. Any more are dropped.
+	 * 
+	 * @param iMaxCatchUp
+	 *            The most extra steps to run
+	 */
+	public void setMaxCatchUp(int iMaxCatchUp) {
+		this.iMaxCatchUp = iMaxCatchUp;
+	}
+
+	/**
+	 * Sets how long before a step is due a fixed step clock stops parking and
+	 * spins instead. Parking can wake late by tens of microseconds, so
+	 * spinning the last stretch gives steadier steps at the cost of a busy
+	 * core. 0 never spins.
+	 * 
+	 * @param lSpinNanos
+	 *            The spin time in nanoseconds
+	 */
+	public void setSpinNanos(long lSpinNanos) {
+		this.lSpinNanos = lSpinNanos;
+	}
+
+	/**
+	 * Returns the number of steps a fixed step clock has dropped.
+	 * 
+	 * @return The dropped steps
+	 */
+	public long getDroppedSteps() {
+		return lDropped;
+	}
+
 	/**
 	 * Initiates the clock.
 	 */
@@ -94,6 +167,21 @@ public class Clock implements Runnable {
 	 * greatest accuracy the iInterface.
 	 */
 	public void run() {
+		do {
+			if (bFixedStep) {
+				runFixedStep();
+			} else {
+				runSleeping();
+			}
+		} while (bRun);
+		bIsRunning = false;
+	}
+
+	/**
+	 * Updates and then sleeps for the rest of 1 / FPS seconds, measured in
+	 * milliseconds, until stopped or switched to fixed steps.
+	 */
+	private void runSleeping() {
 		do {
 			bIsRunning = true;
 			long lTime = System.nanoTime();
@@ -115,8 +203,66 @@ public class Clock implements Runnable {
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
-		} while (bRun);
-		bIsRunning = false;
+		} while (bRun && !bFixedStep);
+	}
+
+	/**
+	 * Updates in fixed steps. The time passed is added to an accumulator, and
+	 * each step due is taken out of it. Steps that are not run are dropped
+	 * according to the catch up policy. Returns when stopped or switched out
+	 * of fixed steps.
+	 */
+	private void runFixedStep() {
+		long lAccumulator = getStepNanos();
+		long lLast = System.nanoTime();
+		do {
+			bIsRunning = true;
+			long lStep = getStepNanos();
+			long lNow = System.nanoTime();
+			lAccumulator += lNow - lLast;
+			lLast = lNow;
+			long lDue = lAccumulator / lStep;
+			if (lDue == 0) {
+				pause(lNow + lStep - lAccumulator);
+				continue;
+			}
+			long lRun = 1;
+			if (catchUp == CatchUp.RUN) {
+				lRun = Math.min(lDue, iMaxCatchUp + 1l);
+			}
+			lDropped += lDue - lRun;
+			lAccumulator -= lDue * lStep;
+			for (long i = 0; i < lRun && bRun; i++) {
+				u.update();
+			}
+		} while (bRun && bFixedStep);
+	}
+
+	/**
+	 * Returns the length of a step for the current FPS.
+	 * 
+	 * @return The step in nanoseconds
+	 */
+	private long getStepNanos() {
+		return Math.max(1l, (long) (1000000000.0 / fFps));
+	}
+
+	/**
+	 * Waits until the given time, parking until the spin time before it and
+	 * spinning for the rest.
+	 * 
+	 * @param lDeadline
+	 *            The time to wait for, from System.nanoTime()
+	 */
+	private void pause(long lDeadline) {
+		long lRemaining = lDeadline - System.nanoTime();
+		while (lRemaining > lSpinNanos && bRun && bFixedStep) {
+			LockSupport.parkNanos(lRemaining - lSpinNanos);
+			lRemaining = lDeadline - System.nanoTime();
+		}
+		while (lDeadline - System.nanoTime() > 0 && bRun && bFixedStep) {
+			// Spin until the step is due.
+		}
 	}
 
 	/**
@@ -0,0 +1,261 @@
+package clock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives many Updatables, each at its own FPS, from one timer thread and a
+ * small pool of workers. Where a Clock needs a thread per Updatable, a
+ * TimingWheel can host thousands of games in one program.
+ * <p>
+ * Time is cut into ticks, and the ticks are hashed onto a ring of buckets. The
+ * timer thread visits one bucket per tick and hands every clock that is due to
+ * the workers. Clocks due more than one turn of the ring away wait out the
+ * extra turns in their bucket. A clock is never updated twice at once: it is
+ * only put back on the wheel after its update returns.
+ * 
+ * @author Brian Nakayama
+ * @see clock.WheelClock
+ */
+public class TimingWheel implements Runnable {
+
+	/**
+	 * The default length of a tick in nanoseconds.
+	 */
+	public static final long DEFAULT_TICK_NANOS = 1000000;
+
+	/**
+	 * The default number of buckets on the wheel.
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	/**
+	 * The length of a tick in nanoseconds.
+	 */
+	private final long tickNanos;
+
+	/**
+	 * The clocks waiting in each bucket. Only used by the timer thread.
+	 */
+	private final List<List<WheelClock>> buckets;
+
+	/**
+	 * One less than the number of buckets, a power of two.
+	 */
+	private final int mask;
+
+	/**
+	 * Clocks waiting to be put into a bucket by the timer thread.
+	 */
+	private final Queue<WheelClock> pending = new ConcurrentLinkedQueue<WheelClock>();
+
+	/**
+	 * Runs the updates of clocks that are due.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * The thread that visits the buckets.
+	 */
+	private final Thread timer;
+
+	/**
+	 * The time the wheel started, from System.nanoTime().
+	 */
+	private final long startTime;
+
+	/**
+	 * The tick the timer thread is on.
+	 */
+	private long tick = 0;
+
+	/**
+	 * True until the wheel is shut down.
+	 */
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a wheel with the default tick and size, and a worker for each
+	 * processor.
+	 */
+	public TimingWheel() {
+		this(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Creates a wheel and starts its timer thread.
+	 * 
+	 * @param tickNanos
+	 *            The length of a tick in nanoseconds
+	 * @param wheelSize
+	 *            The number of buckets, rounded up to a power of two
+	 * @param workerCount
+	 *            The number of threads running updates
+	 */
+	public TimingWheel(long tickNanos, int wheelSize, int workerCount) {
+		if (tickNanos <= 0 || wheelSize <= 0 || workerCount <= 0) {
+			throw new RuntimeException("A timing wheel needs a positive tick,"
+					+ " size and number of workers.");
+		}
+		this.tickNanos = tickNanos;
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		buckets = new ArrayList<List<WheelClock>>(size);
+		for (int i = 0; i < size; i++) {
+			buckets.add(new ArrayList<WheelClock>());
+		}
+		workers = Executors.newFixedThreadPool(workerCount,
+				new DaemonFactory("wheel-worker"));
+		startTime = System.nanoTime();
+		timer = new DaemonFactory("wheel-timer").newThread(this);
+		timer.start();
+	}
+
+	/**
+	 * Creates a clock on this wheel. The clock does not run until it is
+	 * initiated.
+	 * 
+	 * @param fFps
+	 *            The desired frames per second
+	 * @param u
+	 *            The object that receives updates
+	 * @return The clock
+	 */
+	public WheelClock createClock(float fFps, Updatable u) {
+		return new WheelClock(this, fFps, u);
+	}
+
+	/**
+	 * Puts a clock on the wheel to run at its deadline.
+	 * 
+	 * @param clock
+	 *            A clock whose deadline is set
+	 */
+	void schedule(WheelClock clock) {
+		pending.add(clock);
+	}
+
+	/**
+	 * Hands a due clock to the workers.
+	 * 
+	 * @param clock
+	 *            A clock whose deadline has passed
+	 */
+	private void fire(WheelClock clock) {
+		if (running) {
+			workers.execute(clock);
+		}
+	}
+
+	/**
+	 * Stops the timer thread, which then stops the workers. Clocks on the
+	 * wheel stop receiving updates.
+	 */
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(timer);
+	}
+
+	/*
+	 * Overrides the Threads run method to visit one bucket each tick. Only
+	 * the timer thread hands clocks to the workers, so it shuts them down
+	 * once it has stopped, and never hands a clock to a pool that is shut
+	 * down.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				long deadline = startTime + (tick + 1) * tickNanos;
+				long remaining = deadline - System.nanoTime();
+				while (remaining > 0 && running) {
+					LockSupport.parkNanos(remaining);
+					remaining = deadline - System.nanoTime();
+				}
+				transferPending();
+				expire(buckets.get((int) (tick & mask)));
+				tick++;
+			}
+		} finally {
+			workers.shutdown();
+		}
+	}
+
+	/**
+	 * Moves the pending clocks into the buckets of their deadlines. Clocks
+	 * whose deadlines have already passed go into the current bucket.
+	 */
+	private void transferPending() {
+		WheelClock clock;
+		while ((clock = pending.poll()) != null) {
+			long target = (clock.getDeadline() - startTime + tickNanos - 1)
+					/ tickNanos - 1;
+			target = Math.max(target, tick);
+			clock.setRounds((target - tick) / buckets.size());
+			buckets.get((int) (target & mask)).add(clock);
+		}
+	}
+
+	/**
+	 * Fires the clocks in a bucket that are on their last turn of the wheel.
+	 * 
+	 * @param bucket
+	 *            The bucket of the current tick
+	 */
+	private void expire(List<WheelClock> bucket) {
+		int kept = 0;
+		for (int i = 0; i < bucket.size(); i++) {
+			WheelClock clock = bucket.get(i);
+			if (clock.getRounds() > 0) {
+				clock.setRounds(clock.getRounds() - 1);
+				bucket.set(kept++, clock);
+			} else {
+				fire(clock);
+			}
+		}
+		bucket.subList(kept, bucket.size()).clear();
+	}
+
+	/**
+	 * Creates named daemon threads, so a wheel never keeps the program alive.
+	 */
+	private static class DaemonFactory implements ThreadFactory {
+
+		/**
+		 * The name given to each thread.
+		 */
+		private String name;
+
+		/**
+		 * Creates a factory.
+		 * 
+		 * @param name
+		 *            The name given to each thread
+		 */
+		private DaemonFactory(String name) {
+			this.name = name;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
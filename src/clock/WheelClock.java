@@ -0,0 +1,259 @@
+package clock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A clock driven by a TimingWheel instead of its own thread. It is started,
+ * paused and changed in the same way as a Clock. Steps missed because the
+ * wheel or the update ran late are dropped, and how late each update started
+ * is recorded.
+ * 
+ * @author Brian Nakayama
+ * @see clock.TimingWheel#createClock(float, Updatable)
+ */
+public class WheelClock implements Runnable {
+
+	/**
+	 * The wheel driving this clock.
+	 */
+	private final TimingWheel wheel;
+
+	/**
+	 * True while the clock should keep updating.
+	 */
+	private volatile boolean bRun = false;
+
+	/**
+	 * True while the clock is on the wheel or updating.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	/**
+	 * The desired frames per second.
+	 */
+	private volatile float fFps;
+
+	/**
+	 * The object that receives clock updates.
+	 */
+	private volatile Updatable u;
+
+	/**
+	 * The time the next update is due, from System.nanoTime().
+	 */
+	private volatile long lDeadline;
+
+	/**
+	 * The turns of the wheel left before the clock is due. Only used by the
+	 * timer thread.
+	 */
+	private long lRounds;
+
+	/**
+	 * The number of updates run.
+	 */
+	private volatile long lUpdates = 0;
+
+	/**
+	 * How late the last update started, in nanoseconds.
+	 */
+	private volatile long lLastLateness = 0;
+
+	/**
+	 * The most any update has started late, in nanoseconds.
+	 */
+	private volatile long lMaxLateness = 0;
+
+	/**
+	 * The sum of how late every update started, in nanoseconds.
+	 */
+	private volatile long lTotalLateness = 0;
+
+	/**
+	 * The number of steps skipped because an update was too late.
+	 */
+	private volatile long lDropped = 0;
+
+	/**
+	 * Creates a clock on a wheel.
+	 * 
+	 * @param wheel
+	 *            The wheel driving this clock
+	 * @param fFps
+	 *            A float representing the desired Frames per second.
+	 * @param u
+	 *            The interface object that'll receive updates.
+	 */
+	WheelClock(TimingWheel wheel, float fFps, Updatable u) {
+		this.wheel = wheel;
+		this.fFps = fFps;
+		this.u = u;
+	}
+
+	/**
+	 * Simply returns if the clock is running.
+	 * 
+	 * @return A boolean defining the running status.
+	 */
+	public boolean isRunning() {
+		return bRun;
+	}
+
+	/**
+	 * Sets a new object to receive updates.
+	 * 
+	 * @param u
+	 *            The new interface to receive updates
+	 */
+	public void setInterface(Updatable u) {
+		this.u = u;
+	}
+
+	/**
+	 * Sets the Frames per Second float variable. The new rate is used from the
+	 * next update on.
+	 * 
+	 * @param fFps
+	 *            The new FPS rate
+	 */
+	public void setFPS(float fFps) {
+		this.fFps = fFps;
+	}
+
+	/**
+	 * Initiates the clock.
+	 */
+	public void init() {
+		resume();
+	}
+
+	/**
+	 * Resumes the clock if stopped. The first update is due immediately.
+	 */
+	public void resume() {
+		bRun = true;
+		if (scheduled.compareAndSet(false, true)) {
+			lDeadline = System.nanoTime();
+			wheel.schedule(this);
+		}
+	}
+
+	/**
+	 * Stops the clock. An update already running finishes.
+	 */
+	public void stop() {
+		bRun = false;
+	}
+
+	/**
+	 * Returns the number of updates run.
+	 * 
+	 * @return The number of updates
+	 */
+	public long getUpdates() {
+		return lUpdates;
+	}
+
+	/**
+	 * Returns how late the last update started.
+	 * 
+	 * @return The lateness in nanoseconds
+	 */
+	public long getLastLateness() {
+		return lLastLateness;
+	}
+
+	/**
+	 * Returns the most any update has started late.
+	 * 
+	 * @return The lateness in nanoseconds
+	 */
+	public long getMaxLateness() {
+		return lMaxLateness;
+	}
+
+	/**
+	 * Returns how late updates started on average.
+	 * 
+	 * @return The lateness in nanoseconds, or 0 before the first update
+	 */
+	public long getAverageLateness() {
+		long lCount = lUpdates;
+		return lCount == 0 ? 0 : lTotalLateness / lCount;
+	}
+
+	/**
+	 * Returns the number of steps skipped because an update was too late.
+	 * 
+	 * @return The dropped steps
+	 */
+	public long getDroppedSteps() {
+		return lDropped;
+	}
+
+	/**
+	 * Returns the time the next update is due.
+	 * 
+	 * @return The deadline from System.nanoTime()
+	 */
+	long getDeadline() {
+		return lDeadline;
+	}
+
+	/**
+	 * Returns the turns of the wheel left before the clock is due.
+	 * 
+	 * @return The rounds left
+	 */
+	long getRounds() {
+		return lRounds;
+	}
+
+	/**
+	 * Sets the turns of the wheel left before the clock is due.
+	 * 
+	 * @param lRounds
+	 *            The rounds left
+	 */
+	void setRounds(long lRounds) {
+		this.lRounds = lRounds;
+	}
+
+	/*
+	 * Runs one update on a worker, records how late it was, and puts the
+	 * clock back on the wheel for its next step.
+	 */
+	@Override
+	public void run() {
+		if (!bRun) {
+			scheduled.set(false);
+			// The clock may have been resumed while it was leaving the wheel.
+			if (bRun && scheduled.compareAndSet(false, true)) {
+				lDeadline = System.nanoTime();
+				wheel.schedule(this);
+			}
+			return;
+		}
+		long lStart = System.nanoTime();
+		long lLateness = Math.max(0, lStart - lDeadline);
+		lLastLateness = lLateness;
+		lMaxLateness = Math.max(lMaxLateness, lLateness);
+		lTotalLateness += lLateness;
+		lUpdates++;
+		try {
+			u.update();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		long lStep = Math.max(1l, (long) (1000000000.0 / fFps));
+		long lNext = lDeadline + lStep;
+		long lNow = System.nanoTime();
+		if (lNow - lNext >= lStep) {
+			long lMissed = (lNow - lNext) / lStep;
+			lDropped += lMissed;
+			lNext += lMissed * lStep;
+		}
+		lDeadline = lNext;
+		wheel.schedule(this);
+	}
+}
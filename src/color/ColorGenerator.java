@@ -1,6 +1,7 @@
 package color;
 
 import java.awt.Color;
+import java.util.Random;
 
 /**
  * An abstract factory for generating colors.
@@ -11,8 +12,9 @@ import java.awt.Color;
 public interface ColorGenerator {
 	/**
 	 * Makes a new color. For style, subclasses should create multiple colors.
+	 * @param random The map's number generator
 	 * @return A Color
 	 */
-	public Color createColor();
+	public Color createColor(Random random);
 
 }
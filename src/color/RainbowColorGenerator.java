@@ -3,8 +3,6 @@ package color;
 import java.awt.Color;
 import java.util.Random;
 
-import main.Config;
-
 /**
  * Randomly creates one of 6 dark rainbow colors: Blue, Green, Yellow, Orange,
  * Red, Purple, Blue.
@@ -22,18 +20,13 @@ public class RainbowColorGenerator implements ColorGenerator {
 			new Color(0.0f, 0.25f, 0.0f), new Color(0.0f, 0.0f, 0.25f),
 			new Color(0.25f, 0.0f, 0.25f), };
 
-	/**
-	 * The number generator for creating colors.
-	 */
-	private Random r = Config.RANDOM;
-
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see color.ColorGenerator#getColor()
+	 * @see color.ColorGenerator#createColor(java.util.Random)
 	 */
 	@Override
-	public Color createColor() {
-		return COLORS[r.nextInt(6)];
+	public Color createColor(Random random) {
+		return COLORS[random.nextInt(6)];
 	}
 }
@@ -2,8 +2,6 @@ package color;
 
 import java.awt.Color;
 import java.util.Random;
-
-import main.Config;
 /**
  * Creates 3 dark green colors.
  * @author Brian Nakayama
@@ -15,18 +13,13 @@ public class RandomGreenGenerator implements ColorGenerator{
 	 */
 	public static final Color COLOR_BASE = new Color(0.0f, 0.25f, 0.0f);
 	
-	/**
-	 * The number generator for creating colors.
-	 */
-	private Random r = Config.RANDOM;
-	
 	/*
 	 * (non-Javadoc)
-	 * @see color.ColorGenerator#getColor()
+	 * @see color.ColorGenerator#createColor(java.util.Random)
 	 */
 	@Override
-	public Color createColor() {
-		int next = r.nextInt(3);
+	public Color createColor(Random random) {
+		int next = random.nextInt(3);
 		switch(next){
 		case 0:
 			return COLOR_BASE;
@@ -3,8 +3,6 @@ package color;
 import java.awt.Color;
 import java.util.Random;
 
-import main.Config;
-
 /**
  * Creates 3 light blue colors.
  * @author Brian Nakayama
@@ -16,18 +14,13 @@ public class RandomSnowGenerator implements ColorGenerator{
 	 */
 	public static final Color COLOR_BASE = new Color(0.5f, 0.5f, 1.0f);
 	
-	/**
-	 * The number generator for creating colors.
-	 */
-	private Random r = Config.RANDOM;
-	
 	/*
 	 * (non-Javadoc)
-	 * @see color.ColorGenerator#getColor()
+	 * @see color.ColorGenerator#createColor(java.util.Random)
 	 */
 	@Override
-	public Color createColor() {
-		int next = r.nextInt(3);
+	public Color createColor(Random random) {
+		int next = random.nextInt(3);
 		switch(next){
 		case 0:
 			return COLOR_BASE;
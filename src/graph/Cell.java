@@ -1,92 +1,50 @@
 package graph;
 
 import java.awt.Color;
-import java.awt.Polygon;
-import java.util.Random;
-
-import main.Config;
 
 import clock.Updatable;
 
 import state.State;
 
 /**
- * Holds relationships with other cells to create an arbitrary graph.
- * 
+ * Holds relationships with other cells to create an arbitrary graph. A cell
+ * is a handle onto an id in a CellStore, which holds the cell's data.
+ *
  * @author Brian Nakayama
- * 
+ * @see graph.CellStore
  */
 public class Cell implements Updatable {
 
 	/**
-	 * The maximum distance that we will allow path finding for.
-	 */
-	private int maxMouseDistance = Config.MAX_MOUSE_DISTANCE;
-
-	/**
-	 * The background color to render.
-	 */
-	private Color color;
-
-	/**
-	 * The polygon for rendering.
-	 */
-	private Polygon polygon;
-
-	/**
-	 * The current state to notify every update.
-	 * @see #update()
-	 */
-	private State state;
-
-	/**
-	 * The adjacent cells in the graph.
-	 */
-	private Cell[] neighbors;
-
-	/**
-	 * The cell's inverted distance from the mouse. The closer the cell is, the
-	 * higher this number should be.
-	 */
-	private int mouseDistance = 0;
-
-	/**
-	 * Keeps track of if we have processed an odd number of frames.
-	 */
-	private boolean parity = false;
-
-	/**
-	 * Keeps track of the next parity.
+	 * The store holding this cell's data.
 	 */
-	private boolean nextParity = false;
+	private CellStore store;
 
 	/**
-	 * The random number generator used for getting neighbors.
+	 * The id of this cell in the store.
 	 */
-	private static Random random = Config.RANDOM;
+	private int id;
 
 	/**
-	 * Create a cell with a background color and a polygon (in the correct x-y
-	 * coordinates).
-	 * 
-	 * @param color
-	 *            A background color for rendering
-	 * @param polygon
-	 *            A polygon for rendering
+	 * Create a handle for the cell with the given id.
+	 *
+	 * @param store
+	 *            The store holding the cell's data
+	 * @param id
+	 *            The id of the cell in the store
 	 */
-	public Cell(Color color, Polygon polygon) {
-		this.color = color;
-		this.polygon = polygon;
+	public Cell(CellStore store, int id) {
+		this.store = store;
+		this.id = id;
 	}
 
 	/**
-	 * Set the adjacent cells.
-	 * 
-	 * @param neighbors
-	 *            Adjacent cells
+	 * Get the id of this cell in its store.
+	 *
+	 * @return The id
 	 */
-	public void setNeighbors(Cell[] neighbors) {
-		this.neighbors = neighbors;
+	public int getId() {
+		return id;
 	}
 
 	/**
@@ -95,172 +53,154 @@ public class Cell implements Updatable {
 	 * to MAX_MOUSE_DISTANCE minus ten.
 	 */
 	public void updateMouseDistance() {
-
-		if (state == null || state.isPassable()) {
-			mouseDistance = maxMouseDistance;
-			updateNeighbors(maxMouseDistance - 1);
-		}
+		store.getDistances().flood(id);
 	}
 
 	/**
-	 * 
-	 * @return
+	 * Get the cell's inverted distance from the mouse. The closer the cell is,
+	 * the higher this number should be.
+	 *
+	 * @return The inverted distance, or 0 if the mouse is out of reach
 	 */
-	public int getMouseDistance(){
-		return mouseDistance;
-	}
-	
-	/**
-	 * Helper method for finding a path to the mouse.
-	 * 
-	 * @param distance
-	 *            THe distance to update this cell with.
-	 * @see #updateMouseDistance()
-	 */
-	private void updateNeighbors(int distance) {
-		if (distance > 0) {
-			for (Cell neighbor : neighbors) {
-				if (neighbor.mouseDistance < distance
-						&& (neighbor.state == null || neighbor.state
-								.isPassable())) {
-					neighbor.mouseDistance = distance;
-					neighbor.updateNeighbors(distance - 1);
-				}
-			}
-		}
+	public int getMouseDistance() {
+		return store.getDistances().get(id);
 	}
 
 	/**
 	 * Gets a random cell closer to the mouse. The cell can be open or it can
 	 * have a passable state.
-	 * 
+	 *
 	 * @return An open or passable cell closer to the mouse, or null if none can
 	 *         be found.
 	 */
 	public Cell getRandomCloser() {
+		RandomSource random = store.getRandom();
 		double highestProb = 0.5;
 		int highestDistance = 1;
-		Cell highCell = null;
-		for (Cell neighbor : neighbors) {
-			if (neighbor.state == null || neighbor.state.isPassable()) {
-				if (neighbor.mouseDistance > highestDistance) {
+		int highId = -1;
+		for (int i = store.getNeighborStart(id); i < store.getNeighborEnd(id); i++) {
+			int neighbor = store.getNeighborId(i);
+			if (store.getCode(neighbor) != CellStore.BLOCKED) {
+				int distance = store.getDistances().get(neighbor);
+				if (distance > highestDistance) {
 					double chance = random.nextDouble();
-					highestDistance = neighbor.mouseDistance;
-					highCell = neighbor;
+					highestDistance = distance;
+					highId = neighbor;
 					highestProb = chance;
-				} else if (neighbor.mouseDistance == highestDistance) {
+				} else if (distance == highestDistance) {
 					double chance = random.nextDouble();
 					if (chance > highestProb) {
-						highCell = neighbor;
+						highId = neighbor;
 						highestProb = chance;
 					}
 				}
 			}
 		}
-		return highCell;
+		return highId < 0 ? null : store.getCell(highId);
 	}
 
 	/**
 	 * Get an open adjacent state to the current cell, selecting from each cell
 	 * with uniform probability. If the cell calling this method has an
 	 * impassable state, it will extend its search to passable states.
-	 * 
-	 * @param state
-	 *            The state
+	 *
 	 * @return An open cell or null if one cannot be found.
 	 */
 	public Cell getRandomOpen() {
+		RandomSource random = store.getRandom();
+		boolean blocked = store.getCode(id) == CellStore.BLOCKED;
 		double highest = 0;
-		Cell highCell = null;
-		for (Cell neighbor : neighbors) {
-			if (neighbor.getState() == null || !state.isPassable()
-					&& neighbor.getState().isPassable()) {
+		int highId = -1;
+		for (int i = store.getNeighborStart(id); i < store.getNeighborEnd(id); i++) {
+			int neighbor = store.getNeighborId(i);
+			byte code = store.getCode(neighbor);
+			if (code == CellStore.OPEN || blocked && code == CellStore.PASSABLE) {
 				double chance = random.nextDouble();
 				if (chance > highest) {
-					highCell = neighbor;
+					highId = neighbor;
 					highest = chance;
 				}
 			}
 		}
-		return highCell;
+		return highId < 0 ? null : store.getCell(highId);
+	}
+
+	/**
+	 * Get the number of the frame being updated on the map holding this
+	 * cell.
+	 *
+	 * @return The frame number
+	 */
+	public int getFrame() {
+		return store.getFrame();
+	}
+
+	/**
+	 * Ends the game on the map holding this cell.
+	 *
+	 * @param score
+	 *            The final score
+	 * @see graph.GraphMap#isGameOver()
+	 */
+	public void endGame(int score) {
+		store.endGame(score);
 	}
 
 	/**
 	 * Resets the distance from the mouse for path finding.
 	 */
 	public void clearDistance() {
-		mouseDistance = 0;
+		store.getDistances().clear(id);
 	}
 
 	/**
 	 * Get the background color of this cell.
-	 * 
+	 *
 	 * @return background color
 	 */
 	public Color getColor() {
-		return color;
-	}
-
-	/**
-	 * Get the polygon representing the area this cell occupies.
-	 * 
-	 * @return the space occupied
-	 */
-	public Polygon getPolygon() {
-		return polygon;
+		return store.getColor(id);
 	}
 
 	/**
 	 * Sets the current state of this cell.
-	 * 
+	 *
 	 * @param state
 	 *            the state of this cell
 	 */
 	public void setState(State state) {
-		this.state = state;
+		store.setState(id, state);
 	}
 
 	/**
 	 * Moves the state onto the next cell, prevents the cell from updating the
 	 * state again in the same frame, and sets the current State to null.
-	 * 
+	 *
 	 * @param nextCell
 	 *            the cell to move the state to.
 	 */
 	public void moveState(Cell nextCell) {
-		nextCell.state = this.state;
-		this.state = null;
-		// Prevent the next cell from updating in the same cycle.
-		nextCell.nextParity = parity;
+		store.moveState(id, nextCell.id);
 	}
 
 	/**
 	 * Gets the current state.
-	 * 
+	 *
 	 * @return the current state
 	 */
 	public State getState() {
-		return state;
+		return store.getState(id);
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see clock.Updatable#update()
 	 */
 	@Override
 	public void update() {
-		if (parity == nextParity) {
-			parity = !parity;
-			nextParity = !nextParity;
-			if (state != null) {
-				state.handle(this);
-			}
-		} else {
-			// This state was updated recently.
-			parity = nextParity;
-		}
+		store.update(id);
 	}
-	
-	
+
+
 }
@@ -0,0 +1,123 @@
+package graph;
+
+/**
+ * A set of cell ids that can add, remove and look up an id in constant time.
+ * The ids are kept packed at the front of an array, so the set can also be
+ * walked or sampled in time proportional to its size rather than the size of
+ * the map.
+ *
+ * @author Brian Nakayama
+ * @see graph.CellStore
+ */
+public class CellSet {
+
+	/**
+	 * The ids in the set, packed at the front of the array.
+	 */
+	private int[] ids;
+
+	/**
+	 * One more than the position of each id in ids, or 0 if the id is not in
+	 * the set.
+	 */
+	private int[] positions;
+
+	/**
+	 * The number of ids in the set.
+	 */
+	private int size = 0;
+
+	/**
+	 * Creates an empty set for the ids of a map.
+	 *
+	 * @param capacity
+	 *            The number of cells in the map
+	 */
+	public CellSet(int capacity) {
+		ids = new int[capacity];
+		positions = new int[capacity];
+	}
+
+	/**
+	 * Adds an id to the set.
+	 *
+	 * @param id
+	 *            A cell id
+	 */
+	public void add(int id) {
+		if (positions[id] == 0) {
+			ids[size] = id;
+			size++;
+			positions[id] = size;
+		}
+	}
+
+	/**
+	 * Removes an id from the set, moving the last id into its place.
+	 *
+	 * @param id
+	 *            A cell id
+	 */
+	public void remove(int id) {
+		int position = positions[id];
+		if (position != 0) {
+			int last = ids[size - 1];
+			ids[position - 1] = last;
+			positions[last] = position;
+			positions[id] = 0;
+			size--;
+		}
+	}
+
+	/**
+	 * Checks if an id is in the set.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return True iff the id is in the set
+	 */
+	public boolean contains(int id) {
+		return positions[id] != 0;
+	}
+
+	/**
+	 * Get the number of ids in the set.
+	 *
+	 * @return The size of the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get an id by its position in the set. Positions change as ids are
+	 * removed.
+	 *
+	 * @param index
+	 *            A position between 0 and the size of the set
+	 * @return The id at that position
+	 */
+	public int get(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Copies every id in the set to the front of an array.
+	 *
+	 * @param destination
+	 *            An array at least as long as the set
+	 */
+	public void copyTo(int[] destination) {
+		System.arraycopy(ids, 0, destination, 0, size);
+	}
+
+	/**
+	 * Removes every id from the set.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			positions[ids[i]] = 0;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,1014 @@
+package graph;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.Config;
+
+import state.Revertible;
+import state.State;
+
+/**
+ * Holds the data of every cell in a GraphMap in flat arrays indexed by cell id.
+ * Cells are numbered row by row, so iterating ids in order visits the map in
+ * the same order as iterating its rows. A Cell is only a handle onto an id in
+ * this store.
+ *
+ * @author Brian Nakayama
+ * @see graph.Cell
+ * @see graph.GraphMap
+ */
+public class CellStore {
+
+	/**
+	 * The code for a cell without a state.
+	 */
+	public static final byte OPEN = 0;
+
+	/**
+	 * The code for a cell with a passable state.
+	 */
+	public static final byte PASSABLE = 1;
+
+	/**
+	 * The code for a cell with an impassable state.
+	 */
+	public static final byte BLOCKED = 2;
+
+	/**
+	 * The id of the first cell in each row, followed by the number of cells.
+	 */
+	private int[] rowStart;
+
+	/**
+	 * The handles for each cell.
+	 */
+	private Cell[] cells;
+
+	/**
+	 * The current state of each cell.
+	 */
+	private State[] states;
+
+	/**
+	 * The passability code of each cell's state.
+	 *
+	 * @see #OPEN
+	 * @see #PASSABLE
+	 * @see #BLOCKED
+	 */
+	private byte[] codes;
+
+	/**
+	 * The index of each cell's background color in the palette.
+	 */
+	private short[] paletteIndices;
+
+	/**
+	 * The distinct background colors used by this store.
+	 */
+	private List<Color> palette = new ArrayList<Color>();
+
+	/**
+	 * Finds the palette index of a color while cells are being colored.
+	 */
+	private Map<Color, Short> paletteLookup = new HashMap<Color, Short>();
+
+	/**
+	 * The inverted distance of each cell from the mouse.
+	 *
+	 * @see graph.Cell#getMouseDistance()
+	 */
+	private DistanceField distances;
+
+	/**
+	 * The last frame in which each cell's state was handled.
+	 */
+	private int[] handled;
+
+	/**
+	 * The number of the current frame.
+	 */
+	private int frame = 0;
+
+	/**
+	 * The cells whose states need to be handled every frame.
+	 */
+	private CellSet active;
+
+	/**
+	 * The cells without a state.
+	 */
+	private CellSet empty;
+
+	/**
+	 * The active cells at the start of the current frame, in id order.
+	 */
+	private int[] frameIds = new int[0];
+
+	/**
+	 * The number of active cells at the start of the current frame.
+	 */
+	private int frameCount = 0;
+
+	/**
+	 * The cells whose states were set since the changes were last cleared, or
+	 * null if changes are not tracked.
+	 */
+	private CellSet changed;
+
+	/**
+	 * The next generation of states while frames are synchronous, or null.
+	 * Outside of a frame it always matches the current states.
+	 */
+	private State[] nextStates;
+
+	/**
+	 * True iff state changes are being recorded for a synchronous frame
+	 * instead of being applied.
+	 */
+	private boolean recording = false;
+
+	/**
+	 * Records state changes during a synchronous frame on one thread.
+	 */
+	private ChangeLog log = new ChangeLog();
+
+	/**
+	 * True iff tiles are being updated in parallel, so each worker's tile
+	 * context must be looked up and shared sets must be locked.
+	 */
+	private boolean tiled = false;
+
+	/**
+	 * The context of the tile each worker is updating.
+	 */
+	private final ThreadLocal<TileContext> tileContext = new ThreadLocal<TileContext>();
+
+	/**
+	 * The lowest cell whose state moves into each cell in the current frame.
+	 */
+	private int[] claims;
+
+	/**
+	 * The last frame in which each cell was claimed by a move.
+	 */
+	private int[] claimFrames;
+
+	/**
+	 * The last frame in which each cell's state lost a move to another state.
+	 */
+	private int[] lostFrames;
+
+	/**
+	 * The cells written to the next generation in the current frame.
+	 */
+	private CellSet written;
+
+	/**
+	 * True iff a state has ended the game.
+	 */
+	private boolean gameOver = false;
+
+	/**
+	 * The score the game ended with.
+	 */
+	private int score = 0;
+
+	/**
+	 * Listens for the end of the game, or null.
+	 */
+	private GameOverListener gameOverListener;
+
+	/**
+	 * The number generator used for getting neighbors.
+	 */
+	private RandomSource random;
+
+	/**
+	 * The index into neighborIds where each cell's neighbors begin, followed by
+	 * the total number of neighbor ids.
+	 */
+	private int[] neighborStart;
+
+	/**
+	 * The ids of the adjacent cells of every cell, stored one cell after
+	 * another.
+	 */
+	private int[] neighborIds;
+
+	/**
+	 * The number of cells whose neighbors have been linked.
+	 */
+	private int linked = 0;
+
+	/**
+	 * Creates a store for rows of the given lengths, with a number generator
+	 * of its own.
+	 *
+	 * @param rowLengths
+	 *            The number of cells in each row
+	 */
+	public CellStore(int[] rowLengths) {
+		this(rowLengths, new RandomSource());
+	}
+
+	/**
+	 * Creates a store for rows of the given lengths.
+	 *
+	 * @param rowLengths
+	 *            The number of cells in each row
+	 * @param random
+	 *            The number generator for choosing between neighbors when
+	 *            cells update on one thread
+	 */
+	public CellStore(int[] rowLengths, RandomSource random) {
+		this.random = random;
+		rowStart = new int[rowLengths.length + 1];
+		for (int y = 0; y < rowLengths.length; y++) {
+			rowStart[y + 1] = rowStart[y] + rowLengths[y];
+		}
+		int size = rowStart[rowLengths.length];
+		cells = new Cell[size];
+		states = new State[size];
+		codes = new byte[size];
+		paletteIndices = new short[size];
+		handled = new int[size];
+		active = new CellSet(size);
+		empty = new CellSet(size);
+		neighborStart = new int[size + 1];
+		neighborIds = new int[size * 4];
+		for (int id = 0; id < size; id++) {
+			cells[id] = new Cell(this, id);
+			empty.add(id);
+		}
+		distances = new DistanceField(this, Config.MAX_MOUSE_DISTANCE);
+	}
+
+	/**
+	 * Get the number of cells in this store.
+	 *
+	 * @return The number of cells
+	 */
+	public int size() {
+		return cells.length;
+	}
+
+	/**
+	 * Get the number of rows in this store.
+	 *
+	 * @return The number of rows
+	 */
+	public int getHeight() {
+		return rowStart.length - 1;
+	}
+
+	/**
+	 * Get the number of cells in a row.
+	 *
+	 * @param y
+	 *            The row index
+	 * @return The number of cells in that row
+	 */
+	public int getWidth(int y) {
+		return rowStart[y + 1] - rowStart[y];
+	}
+
+	/**
+	 * Get the id of the cell at index (x, y).
+	 *
+	 * @param x
+	 *            The x index of a Cell
+	 * @param y
+	 *            The y index of a Cell
+	 * @return The id of that cell
+	 */
+	public int getId(int x, int y) {
+		return rowStart[y] + x;
+	}
+
+	/**
+	 * Get the x index of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The index of the cell within its row
+	 */
+	public int getX(int id) {
+		return id - rowStart[getY(id)];
+	}
+
+	/**
+	 * Get the y index of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The row holding the cell
+	 */
+	public int getY(int id) {
+		int y = Arrays.binarySearch(rowStart, id);
+		if (y < 0) {
+			return -y - 2;
+		}
+		// Skip empty rows that start at the same id.
+		while (rowStart[y + 1] == id) {
+			y++;
+		}
+		return y;
+	}
+
+	/**
+	 * Get the handle for a cell id.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The cell with that id
+	 */
+	public Cell getCell(int id) {
+		return cells[id];
+	}
+
+	/**
+	 * Set the background color of a cell, adding it to the palette if it is
+	 * new.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param color
+	 *            The background color
+	 */
+	public void setColor(int id, Color color) {
+		Short index = paletteLookup.get(color);
+		if (index == null) {
+			if (palette.size() > Short.MAX_VALUE) {
+				throw new RuntimeException("Too many background colors.");
+			}
+			index = (short) palette.size();
+			palette.add(color);
+			paletteLookup.put(color, index);
+		}
+		paletteIndices[id] = index;
+	}
+
+	/**
+	 * Get the background color of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The background color
+	 */
+	public Color getColor(int id) {
+		return palette.get(paletteIndices[id]);
+	}
+
+	/**
+	 * Get the number of colors in the palette.
+	 *
+	 * @return The number of distinct background colors
+	 * @see graph.Checkpoint
+	 */
+	int getPaletteSize() {
+		return palette.size();
+	}
+
+	/**
+	 * Get a color from the palette.
+	 *
+	 * @param index
+	 *            An index into the palette
+	 * @return The color
+	 */
+	Color getPaletteColor(int index) {
+		return palette.get(index);
+	}
+
+	/**
+	 * Get the index in the palette of a cell's background color.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The palette index
+	 */
+	short getPaletteIndex(int id) {
+		return paletteIndices[id];
+	}
+
+	/**
+	 * Replaces the palette and every cell's palette index.
+	 *
+	 * @param colors
+	 *            The colors of the palette
+	 * @param indices
+	 *            The palette index of each cell
+	 */
+	void setPalette(Color[] colors, short[] indices) {
+		palette.clear();
+		paletteLookup.clear();
+		for (short i = 0; i < colors.length; i++) {
+			palette.add(colors[i]);
+			paletteLookup.put(colors[i], i);
+		}
+		System.arraycopy(indices, 0, paletteIndices, 0, paletteIndices.length);
+	}
+
+	/**
+	 * Link the next cell (in id order) to its adjacent cells.
+	 *
+	 * @param neighbors
+	 *            The adjacent cells
+	 */
+	public void linkNeighbors(Cell[] neighbors) {
+		int start = neighborStart[linked];
+		if (start + neighbors.length > neighborIds.length) {
+			int[] grown = new int[Math.max(neighborIds.length * 2, start
+					+ neighbors.length)];
+			System.arraycopy(neighborIds, 0, grown, 0, start);
+			neighborIds = grown;
+		}
+		for (int i = 0; i < neighbors.length; i++) {
+			neighborIds[start + i] = neighbors[i].getId();
+		}
+		linked++;
+		neighborStart[linked] = start + neighbors.length;
+	}
+
+	/**
+	 * Get the state of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The state, or null if the cell is open
+	 */
+	public State getState(int id) {
+		return states[id];
+	}
+
+	/**
+	 * Get the passability code of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return OPEN, PASSABLE or BLOCKED
+	 */
+	public byte getCode(int id) {
+		return codes[id];
+	}
+
+	/**
+	 * Sets the state of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param state
+	 *            The new state, or null to open the cell
+	 */
+	public void setState(int id, State state) {
+		if (recording) {
+			currentLog().set(id, state);
+			return;
+		}
+		if (nextStates != null) {
+			nextStates[id] = state;
+		}
+		boolean wasBlocked = codes[id] == BLOCKED;
+		states[id] = state;
+		if (state == null) {
+			codes[id] = OPEN;
+		} else if (state.isPassable()) {
+			codes[id] = PASSABLE;
+		} else {
+			codes[id] = BLOCKED;
+		}
+		if (wasBlocked != (codes[id] == BLOCKED)) {
+			distances.changed(id, wasBlocked);
+		}
+		if (!tiled) {
+			updateSets(id, state);
+			updateEmpty(id);
+			return;
+		}
+		// Tiles updated in parallel can change states at the same time.
+		synchronized (active) {
+			updateSets(id, state);
+		}
+		TileContext context = tileContext.get();
+		if (context != null) {
+			context.addEmptied(id);
+		} else {
+			updateEmpty(id);
+		}
+	}
+
+	/**
+	 * Adds a cell whose state was set to the active and changed cells, or
+	 * takes it out of the active cells.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param state
+	 *            The new state, or null
+	 */
+	private void updateSets(int id, State state) {
+		if (state == null || state.isStatic()) {
+			active.remove(id);
+		} else {
+			active.add(id);
+		}
+		if (changed != null) {
+			changed.add(id);
+		}
+	}
+
+	/**
+	 * Moves the state of one cell onto another, and prevents the other cell
+	 * from updating the state again in the same frame.
+	 *
+	 * @param from
+	 *            The id of the cell holding the state
+	 * @param to
+	 *            The id of the cell to move the state to
+	 */
+	public void moveState(int from, int to) {
+		if (recording) {
+			currentLog().move(from, to, states[from]);
+			return;
+		}
+		setState(to, states[from]);
+		setState(from, null);
+		// Prevent the next cell from updating in the same cycle.
+		handled[to] = frame;
+	}
+
+	/**
+	 * Get the number generator for choosing between neighbors. While a tile
+	 * is being updated in parallel, this is the tile's own generator.
+	 *
+	 * @return A number generator
+	 * @see graph.TileScheduler
+	 */
+	public RandomSource getRandom() {
+		if (tiled) {
+			TileContext context = tileContext.get();
+			if (context != null) {
+				return context.getRandom();
+			}
+		}
+		return random;
+	}
+
+	/**
+	 * Get the distance from the mouse of every cell.
+	 *
+	 * @return The distance field of this store
+	 */
+	public DistanceField getDistances() {
+		return distances;
+	}
+
+	/**
+	 * Get the index into the neighbor ids where a cell's neighbors begin.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The first index of the cell's neighbors
+	 * @see #getNeighborId(int)
+	 */
+	public int getNeighborStart(int id) {
+		return neighborStart[id];
+	}
+
+	/**
+	 * Get the index into the neighbor ids just past a cell's neighbors.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The index after the cell's last neighbor
+	 * @see #getNeighborId(int)
+	 */
+	public int getNeighborEnd(int id) {
+		return neighborStart[id + 1];
+	}
+
+	/**
+	 * Get a neighbor id.
+	 *
+	 * @param index
+	 *            An index between a cell's neighbor start and end
+	 * @return The id of the adjacent cell
+	 */
+	public int getNeighborId(int index) {
+		return neighborIds[index];
+	}
+
+	/**
+	 * Updates a single cell, notifying its state unless the state already
+	 * moved into this cell during the current frame.
+	 *
+	 * @param id
+	 *            A cell id
+	 */
+	public void update(int id) {
+		if (handled[id] != frame) {
+			handled[id] = frame;
+			if (states[id] != null) {
+				if (recording) {
+					currentLog().begin(id);
+				}
+				states[id].handle(cells[id]);
+			}
+		}
+	}
+
+	/**
+	 * Starts a new frame, taking a snapshot of the active cells in id order.
+	 * States that become active during the frame are first handled in the
+	 * next frame.
+	 *
+	 * @return The number of active cells in the snapshot
+	 * @see #getFrameId(int)
+	 */
+	public int startFrame() {
+		frame++;
+		int count = active.size();
+		if (frameIds.length < count) {
+			frameIds = new int[Math.max(count, frameIds.length * 2)];
+		}
+		active.copyTo(frameIds);
+		Arrays.sort(frameIds, 0, count);
+		frameCount = count;
+		return count;
+	}
+
+	/**
+	 * Set the number of the current frame, when restoring a checkpoint.
+	 *
+	 * @param frame
+	 *            The frame number
+	 * @see graph.Checkpoint
+	 */
+	void setFrame(int frame) {
+		this.frame = frame;
+		Arrays.fill(handled, 0);
+	}
+
+	/**
+	 * Get the number of the current frame.
+	 *
+	 * @return The frame number, counting up from 1 for the first frame
+	 */
+	public int getFrame() {
+		return frame;
+	}
+
+	/**
+	 * Get the number of active cells in the snapshot of the current frame.
+	 *
+	 * @return The number of active cells
+	 * @see #startFrame()
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Set whether the cells whose states are set should be remembered until
+	 * the changes are cleared. Used to redraw only what changed.
+	 *
+	 * @param track
+	 *            True iff changes should be tracked
+	 */
+	public void setTrackChanges(boolean track) {
+		if (!track) {
+			changed = null;
+		} else if (changed == null) {
+			changed = new CellSet(states.length);
+		}
+	}
+
+	/**
+	 * Adds a cell to the set of empty cells or takes it out, depending on
+	 * whether it has a state.
+	 *
+	 * @param id
+	 *            A cell id
+	 */
+	void updateEmpty(int id) {
+		if (states[id] == null) {
+			empty.add(id);
+		} else {
+			empty.remove(id);
+		}
+	}
+
+	/**
+	 * Get the number of cells without a state.
+	 *
+	 * @return The number of empty cells
+	 */
+	public int getEmptyCount() {
+		return empty.size();
+	}
+
+	/**
+	 * Get a cell without a state. Picking a random index picks uniformly
+	 * between the empty cells.
+	 *
+	 * @param index
+	 *            A position between 0 and the number of empty cells
+	 * @return The id of an empty cell
+	 */
+	public int getEmptyId(int index) {
+		return empty.get(index);
+	}
+
+	/**
+	 * Puts the empty cells in the order they were in when a checkpoint was
+	 * saved, so random picks from them match.
+	 *
+	 * @param ids
+	 *            Every empty cell, in the order returned by getEmptyId()
+	 * @see graph.Checkpoint
+	 */
+	void setEmptyOrder(int[] ids) {
+		empty.clear();
+		for (int id : ids) {
+			empty.add(id);
+		}
+	}
+
+	/**
+	 * Get the number of cells whose states were set since the changes were
+	 * last cleared.
+	 *
+	 * @return The number of changed cells, or 0 if changes are not tracked
+	 */
+	public int getChangedCount() {
+		return changed == null ? 0 : changed.size();
+	}
+
+	/**
+	 * Get a cell whose state was set since the changes were last cleared.
+	 *
+	 * @param index
+	 *            A position between 0 and the number of changed cells
+	 * @return The id of a changed cell
+	 */
+	public int getChangedId(int index) {
+		return changed.get(index);
+	}
+
+	/**
+	 * Forgets the cells whose states were set.
+	 */
+	public void clearChanges() {
+		if (changed != null) {
+			changed.clear();
+		}
+	}
+
+	/**
+	 * Get an active cell from the snapshot of the current frame.
+	 *
+	 * @param index
+	 *            A position in the snapshot
+	 * @return The id of an active cell
+	 * @see #startFrame()
+	 */
+	public int getFrameId(int index) {
+		return frameIds[index];
+	}
+
+	/**
+	 * Updates every active cell in id order. Empty cells and cells with
+	 * static states are never visited.
+	 */
+	public void update() {
+		int count = startFrame();
+		recording = nextStates != null;
+		try {
+			for (int i = 0; i < count; i++) {
+				update(frameIds[i]);
+			}
+		} finally {
+			recording = false;
+		}
+		if (nextStates != null) {
+			commit(log);
+		}
+	}
+
+	/**
+	 * Ends the game. Only the first call has any effect.
+	 *
+	 * @param score
+	 *            The final score
+	 */
+	public synchronized void endGame(int score) {
+		if (!gameOver) {
+			gameOver = true;
+			this.score = score;
+			if (gameOverListener != null) {
+				gameOverListener.gameOver(score);
+			}
+		}
+	}
+
+	/**
+	 * Get whether a state has ended the game.
+	 *
+	 * @return True iff the game is over
+	 */
+	public synchronized boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * Get the score the game ended with.
+	 *
+	 * @return The final score, or 0 if the game is not over
+	 */
+	public synchronized int getScore() {
+		return score;
+	}
+
+	/**
+	 * Hash what can be seen of the game: the frame, the score, and the class
+	 * and colors of every cell's state. Two runs of a game that hash the same
+	 * almost certainly played the same way.
+	 * 
+	 * @return A hash of the game's state
+	 * @see main.Replay
+	 */
+	public long hashState() {
+		long hash = frame * 31L + getScore();
+		for (int id = 0; id < size(); id++) {
+			State state = states[id];
+			hash = hash * 31 + getColor(id).getRGB();
+			if (state != null) {
+				hash = hash * 31 + state.getClass().getName().hashCode();
+				hash = hash * 31 + state.getColor().getRGB();
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Set the listener told when the game ends.
+	 *
+	 * @param gameOverListener
+	 *            A listener, or null
+	 */
+	public synchronized void setGameOverListener(
+			GameOverListener gameOverListener) {
+		this.gameOverListener = gameOverListener;
+	}
+
+	/**
+	 * Set whether frames are synchronous. In a synchronous frame every state
+	 * is handled against the same generation of the map, and the changes
+	 * they ask for are only written to the next generation once all of them
+	 * have been handled. The result does not depend on the order in which
+	 * cells are handled.
+	 *
+	 * @param synchronous
+	 *            True iff frames should be synchronous
+	 * @see #commit(ChangeLog...)
+	 */
+	public void setSynchronous(boolean synchronous) {
+		if (!synchronous) {
+			nextStates = null;
+		} else if (nextStates == null) {
+			nextStates = states.clone();
+			claims = new int[states.length];
+			claimFrames = new int[states.length];
+			lostFrames = new int[states.length];
+			written = new CellSet(states.length);
+		}
+	}
+
+	/**
+	 * Get whether frames are synchronous.
+	 *
+	 * @return True iff frames are synchronous
+	 */
+	public boolean isSynchronous() {
+		return nextStates != null;
+	}
+
+	/**
+	 * Set whether state changes are recorded for a synchronous frame instead
+	 * of being applied. Used when the frame is handled by several workers.
+	 *
+	 * @param recording
+	 *            True iff changes should be recorded
+	 */
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * Set whether tiles are being updated in parallel. Only while they are
+	 * does the store look for the tile context of the current thread.
+	 *
+	 * @param tiled
+	 *            True iff tiles are being updated in parallel
+	 * @see graph.TileScheduler#update()
+	 */
+	void setTiled(boolean tiled) {
+		this.tiled = tiled;
+	}
+
+	/**
+	 * Set the context of the tile the current thread is about to update.
+	 *
+	 * @param context
+	 *            The tile's context, or null once the tile is done
+	 */
+	void setTileContext(TileContext context) {
+		if (context == null) {
+			tileContext.remove();
+		} else {
+			tileContext.set(context);
+		}
+	}
+
+	/**
+	 * Get the log for state changes on this thread.
+	 *
+	 * @return The log of the tile being updated, or this store's log
+	 */
+	private ChangeLog currentLog() {
+		if (tiled) {
+			TileContext context = tileContext.get();
+			if (context != null) {
+				return context.getLog();
+			}
+		}
+		return log;
+	}
+
+	/**
+	 * Writes the changes recorded during a synchronous frame into the next
+	 * generation, and then makes it the current one. When several states
+	 * move into the same cell, the state from the cell with the lowest id
+	 * wins. The other states stay where they were, and none of their changes
+	 * for the frame are written. Losing states that are Revertible are told,
+	 * so they can undo what they did to themselves.
+	 *
+	 * @param logs
+	 *            The logs holding the frame's changes
+	 */
+	public void commit(ChangeLog... logs) {
+		for (ChangeLog changes : logs) {
+			for (int i = 0; i < changes.size(); i++) {
+				int to = changes.getTo(i);
+				int source = changes.getSource(i);
+				if (changes.getFrom(i) >= 0
+						&& (claimFrames[to] != frame || source < claims[to])) {
+					claimFrames[to] = frame;
+					claims[to] = source;
+				}
+			}
+		}
+		for (ChangeLog changes : logs) {
+			for (int i = 0; i < changes.size(); i++) {
+				int source = changes.getSource(i);
+				if (changes.getFrom(i) >= 0
+						&& claims[changes.getTo(i)] != source
+						&& lostFrames[source] != frame) {
+					lostFrames[source] = frame;
+					if (states[source] instanceof Revertible) {
+						((Revertible) states[source]).revert(cells[source]);
+					}
+				}
+			}
+		}
+		for (ChangeLog changes : logs) {
+			for (int i = 0; i < changes.size(); i++) {
+				if (lostFrames[changes.getSource(i)] == frame) {
+					continue;
+				}
+				int from = changes.getFrom(i);
+				int to = changes.getTo(i);
+				State state = changes.getState(i);
+				// Only empty the old cell if nothing else moved in yet.
+				if (from >= 0 && nextStates[from] == state) {
+					nextStates[from] = null;
+					written.add(from);
+				}
+				nextStates[to] = state;
+				written.add(to);
+			}
+			changes.clear();
+		}
+		for (int i = 0; i < written.size(); i++) {
+			int id = written.get(i);
+			setState(id, nextStates[id]);
+		}
+		written.clear();
+	}
+}
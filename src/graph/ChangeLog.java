@@ -0,0 +1,169 @@
+package graph;
+
+import java.util.Arrays;
+
+import state.State;
+
+/**
+ * Records the state changes that cells ask for while a synchronous frame is
+ * being evaluated. Each change remembers the cell whose state asked for it,
+ * so that all of a state's changes can be kept or dropped together when the
+ * frame is committed.
+ *
+ * @author Brian Nakayama
+ * @see graph.CellStore#setSynchronous(boolean)
+ */
+public class ChangeLog {
+
+	/**
+	 * The cell whose state is being handled.
+	 */
+	private int source;
+
+	/**
+	 * The number of recorded changes.
+	 */
+	private int size = 0;
+
+	/**
+	 * The cell whose state asked for each change.
+	 */
+	private int[] sources = new int[16];
+
+	/**
+	 * The cell each state moves out of, or -1 if the change sets a state.
+	 */
+	private int[] froms = new int[16];
+
+	/**
+	 * The cell each change writes to.
+	 */
+	private int[] tos = new int[16];
+
+	/**
+	 * The state each change writes.
+	 */
+	private State[] states = new State[16];
+
+	/**
+	 * Set the cell whose state is about to be handled.
+	 *
+	 * @param source
+	 *            A cell id
+	 */
+	public void begin(int source) {
+		this.source = source;
+	}
+
+	/**
+	 * Records setting the state of a cell.
+	 *
+	 * @param id
+	 *            The cell to set
+	 * @param state
+	 *            The new state, or null
+	 */
+	public void set(int id, State state) {
+		add(-1, id, state);
+	}
+
+	/**
+	 * Records moving a state from one cell to another.
+	 *
+	 * @param from
+	 *            The cell holding the state
+	 * @param to
+	 *            The cell to move the state to
+	 * @param state
+	 *            The state being moved
+	 */
+	public void move(int from, int to, State state) {
+		add(from, to, state);
+	}
+
+	/**
+	 * Appends a change, growing the arrays if needed.
+	 *
+	 * @param from
+	 *            The cell a state moves out of, or -1
+	 * @param to
+	 *            The cell written to
+	 * @param state
+	 *            The state written
+	 */
+	private void add(int from, int to, State state) {
+		if (size == sources.length) {
+			int capacity = size * 2;
+			sources = Arrays.copyOf(sources, capacity);
+			froms = Arrays.copyOf(froms, capacity);
+			tos = Arrays.copyOf(tos, capacity);
+			states = Arrays.copyOf(states, capacity);
+		}
+		sources[size] = source;
+		froms[size] = from;
+		tos[size] = to;
+		states[size] = state;
+		size++;
+	}
+
+	/**
+	 * Get the number of recorded changes.
+	 *
+	 * @return The number of changes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the cell whose state asked for a change.
+	 *
+	 * @param index
+	 *            The index of a change
+	 * @return A cell id
+	 */
+	public int getSource(int index) {
+		return sources[index];
+	}
+
+	/**
+	 * Get the cell a change moves a state out of.
+	 *
+	 * @param index
+	 *            The index of a change
+	 * @return A cell id, or -1 if the change sets a state
+	 */
+	public int getFrom(int index) {
+		return froms[index];
+	}
+
+	/**
+	 * Get the cell a change writes to.
+	 *
+	 * @param index
+	 *            The index of a change
+	 * @return A cell id
+	 */
+	public int getTo(int index) {
+		return tos[index];
+	}
+
+	/**
+	 * Get the state a change writes.
+	 *
+	 * @param index
+	 *            The index of a change
+	 * @return A state, or null
+	 */
+	public State getState(int index) {
+		return states[index];
+	}
+
+	/**
+	 * Forgets every recorded change.
+	 */
+	public void clear() {
+		Arrays.fill(states, 0, size, null);
+		size = 0;
+	}
+}
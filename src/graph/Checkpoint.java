@@ -0,0 +1,760 @@
+package graph;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.Config;
+import state.Savable;
+import state.State;
+import state.StateReader;
+import state.StateRegistry;
+import state.StateWriter;
+
+/**
+ * Saves a whole GraphMap between frames and restores it later, so a game can
+ * carry on exactly where it left off. A checkpoint holds the map's settings,
+ * the colors and state of every cell, the data of every state, the order of
+ * the empty cells, and the state of every number generator the map uses.
+ * <p>
+ * States are saved by reference, so states shared between cells or held by
+ * other states are restored once and shared again. A state with instance
+ * fields must implement Savable. Everything is written with a few large
+ * buffers through NIO channels. Classes named in a checkpoint are checked to
+ * be maps or states before any of them is initialized or created.
+ * <p>
+ * Running this class plays a map file and checks that a checkpoint of it
+ * restores a map that plays the same way.
+ * 
+ * @author Brian Nakayama
+ * @see state.Savable
+ * @see graph.RandomSource
+ */
+public class Checkpoint {
+
+	/**
+	 * The first four bytes of a checkpoint, "SNKC".
+	 */
+	public static final int MAGIC = 0x534E4B43;
+
+	/**
+	 * The version of the layout written by this class.
+	 */
+	public static final short VERSION = 3;
+
+	/**
+	 * The number of bytes in the fixed part of the header.
+	 */
+	private static final int HEADER_BYTES = 128;
+
+	/**
+	 * Use the static methods.
+	 */
+	private Checkpoint() {
+	}
+
+	/**
+	 * Saves a map. Must not be called while the map is updating.
+	 * 
+	 * @param map
+	 *            The map to save
+	 * @param channel
+	 *            Where to write the checkpoint
+	 * @throws IOException
+	 *             If the checkpoint cannot be written
+	 */
+	public static void save(GraphMap map, WritableByteChannel channel)
+			throws IOException {
+		CellStore store = map.getStore();
+		int size = store.size();
+		Writer data = new Writer(store);
+		int[] refs = new int[size];
+		for (int id = 0; id < size; id++) {
+			refs[id] = data.getIndex(store.getState(id));
+		}
+		data.saveStates();
+
+		byte[] mapName = map.getClass().getName()
+				.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + mapName.length
+				+ 4 * store.getHeight() + 4 * store.getPaletteSize());
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		putBytes(header, mapName);
+		map.saveSettings(header);
+		putRandom(header, map.getRandom());
+		putRandom(header, store.getRandom());
+		header.putInt(store.getFrame());
+		header.put((byte) (store.isGameOver() ? 1 : 0));
+		header.putInt(store.getScore());
+		header.putInt(map.getLastFoodCell().getId());
+		header.putInt(map.getFixedTarget() == null ? -1 : map
+				.getFixedTarget().getId());
+		header.putInt(store.getHeight());
+		for (int y = 0; y < store.getHeight(); y++) {
+			header.putInt(store.getWidth(y));
+		}
+		header.putInt(store.getPaletteSize());
+		for (int i = 0; i < store.getPaletteSize(); i++) {
+			header.putInt(store.getPaletteColor(i).getRGB());
+		}
+		header.flip();
+
+		int empty = store.getEmptyCount();
+		TileScheduler scheduler = map.getScheduler();
+		int tiles = scheduler == null ? 0 : scheduler.getTileCount();
+		ByteBuffer cells = ByteBuffer.allocate(6 * size + 4 * empty + 8
+				+ 16 * tiles);
+		for (int id = 0; id < size; id++) {
+			cells.putShort(store.getPaletteIndex(id));
+		}
+		for (int id = 0; id < size; id++) {
+			cells.putInt(refs[id]);
+		}
+		cells.putInt(empty);
+		for (int i = 0; i < empty; i++) {
+			cells.putInt(store.getEmptyId(i));
+		}
+		cells.putInt(tiles);
+		for (int t = 0; t < tiles; t++) {
+			putRandom(cells, scheduler.getRandom(t));
+		}
+		cells.flip();
+
+		write(channel, header);
+		write(channel, cells);
+		write(channel, data.getBuffers());
+	}
+
+	/**
+	 * Restores a map saved by save(). The new map has no game over listener.
+	 * 
+	 * @param channel
+	 *            Where to read the checkpoint
+	 * @return The restored map
+	 * @throws IOException
+	 *             If the checkpoint cannot be read
+	 */
+	public static GraphMap restore(ReadableByteChannel channel)
+			throws IOException {
+		ByteBuffer in = readAll(channel);
+		if (in.remaining() < 6 || in.getInt() != MAGIC) {
+			throw new IOException("This is not a checkpoint.");
+		}
+		short version = in.getShort();
+		if (version != VERSION) {
+			throw new IOException("Unable to read version " + version
+					+ " of a checkpoint.");
+		}
+		String mapName = getString(in);
+		Class<? extends GraphMap> mapClass = findClass(mapName, GraphMap.class);
+		GraphMap map;
+		try {
+			map = mapClass.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Unable to create a " + mapName + ".");
+		}
+		map.restoreSettings(in);
+		long[] random = { in.getLong(), in.getLong(), in.getLong(),
+				in.getLong() };
+		int frame = in.getInt();
+		boolean gameOver = in.get() == 1;
+		int score = in.getInt();
+		int lastFood = in.getInt();
+		int fixedTarget = in.getInt();
+		int[] rowLengths = new int[in.getInt()];
+		for (int y = 0; y < rowLengths.length; y++) {
+			rowLengths[y] = in.getInt();
+		}
+		map.createEmptyCells(rowLengths);
+		CellStore store = map.getStore();
+		int size = store.size();
+
+		Color[] palette = new Color[in.getInt()];
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = new Color(in.getInt(), true);
+		}
+		short[] indices = new short[size];
+		in.asShortBuffer().get(indices);
+		in.position(in.position() + 2 * size);
+		store.setPalette(palette, indices);
+
+		int[] refs = new int[size];
+		in.asIntBuffer().get(refs);
+		in.position(in.position() + 4 * size);
+		int[] empty = new int[in.getInt()];
+		in.asIntBuffer().get(empty);
+		in.position(in.position() + 4 * empty.length);
+		long[] tiles = new long[2 * in.getInt()];
+		for (int t = 0; t < tiles.length; t++) {
+			tiles[t] = in.getLong();
+		}
+
+		State[] states = Reader.restoreStates(in, store);
+		for (int id = 0; id < size; id++) {
+			if (refs[id] != 0) {
+				store.setState(id, states[refs[id]]);
+			}
+		}
+		store.setEmptyOrder(empty);
+		store.setFrame(frame);
+		if (gameOver) {
+			store.endGame(score);
+		}
+		map.setLastFoodCell(store.getCell(lastFood));
+		if (fixedTarget >= 0) {
+			map.updateTarget(store.getCell(fixedTarget));
+		}
+
+		map.getRandom().setState(random[0], random[1]);
+		store.getRandom().setState(random[2], random[3]);
+		TileScheduler scheduler = map.getScheduler();
+		if (tiles.length != 2 * (scheduler == null ? 0 : scheduler
+				.getTileCount())) {
+			throw new IOException("The checkpoint has the wrong tiles.");
+		}
+		for (int t = 0; t < tiles.length; t += 2) {
+			scheduler.getRandom(t / 2).setState(tiles[t], tiles[t + 1]);
+		}
+		return map;
+	}
+
+	/**
+	 * Saves a map to a file, replacing the file if it exists.
+	 * 
+	 * @param map
+	 *            The map to save
+	 * @param location
+	 *            The location of the file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void save(GraphMap map, String location) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(location),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			save(map, channel);
+		}
+	}
+
+	/**
+	 * Restores a map from a file written by save().
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @return The restored map
+	 * @throws IOException
+	 *             If the file cannot be read
+	 */
+	public static GraphMap restore(String location) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(location))) {
+			return restore(channel);
+		}
+	}
+
+	/**
+	 * Saves a map to memory, restores it, and checks that both copies hash
+	 * the same, then and after playing some frames on each.
+	 * 
+	 * @param map
+	 *            The map to check
+	 * @param frames
+	 *            The number of frames to play after restoring
+	 * @return True iff the restored map played the same as the original
+	 * @throws IOException
+	 *             If the checkpoint cannot be written or read
+	 * @see graph.CellStore#hashState()
+	 */
+	public static boolean verify(GraphMap map, int frames) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		save(map, Channels.newChannel(bytes));
+		GraphMap copy = restore(Channels.newChannel(new ByteArrayInputStream(
+				bytes.toByteArray())));
+		if (copy.getStore().hashState() != map.getStore().hashState()) {
+			return false;
+		}
+		for (int i = 0; i < frames; i++) {
+			map.update();
+			copy.update();
+		}
+		return copy.getStore().hashState() == map.getStore().hashState();
+	}
+
+	/**
+	 * Plays a map for some frames, then checks that a checkpoint of it
+	 * restores a map that plays the same way.
+	 * 
+	 * @param args
+	 *            The location of a map file, then optionally the number of
+	 *            frames to play before and after the checkpoint
+	 * @throws IOException
+	 *             If the checkpoint cannot be written or read
+	 * @see #verify(GraphMap, int)
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: Checkpoint <map file> [frames]");
+			return;
+		}
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		GraphMap map = new GraphMapFactory(args[0]).createGraphMap();
+		for (int i = 0; i < frames; i++) {
+			map.update();
+		}
+		if (verify(map, frames)) {
+			System.out.println("The restored map played the same.");
+		} else {
+			System.out.println("The restored map played differently.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Finds a class named in a checkpoint without initializing it, and checks
+	 * that it is a concrete subclass of the expected type before anything
+	 * creates it.
+	 * 
+	 * @param name
+	 *            The name of the class
+	 * @param type
+	 *            The type the class must extend
+	 * @return The class
+	 */
+	private static <T> Class<? extends T> findClass(String name, Class<T> type) {
+		Class<?> clazz;
+		try {
+			clazz = Class.forName(name, false,
+					Checkpoint.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new RuntimeException("No class was found for " + name + ".");
+		}
+		if (!type.isAssignableFrom(clazz) || clazz.isInterface()
+				|| Modifier.isAbstract(clazz.getModifiers())) {
+			throw new RuntimeException(name + " is not a kind of "
+					+ type.getSimpleName() + ".");
+		}
+		return clazz.asSubclass(type);
+	}
+
+	/**
+	 * Writes the state of a number generator.
+	 * 
+	 * @param out
+	 *            Where to write the state
+	 * @param random
+	 *            The number generator
+	 */
+	private static void putRandom(ByteBuffer out, RandomSource random) {
+		out.putLong(random.getSeed());
+		out.putLong(random.getGamma());
+	}
+
+	/**
+	 * Writes a string with its length in bytes.
+	 * 
+	 * @param out
+	 *            Where to write the string
+	 * @param bytes
+	 *            The string encoded as UTF-8
+	 */
+	private static void putBytes(ByteBuffer out, byte[] bytes) {
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	/**
+	 * Reads a string written by putBytes.
+	 * 
+	 * @param in
+	 *            Where to read the string
+	 * @return The string
+	 */
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes every byte left in some buffers.
+	 * 
+	 * @param channel
+	 *            Where to write the bytes
+	 * @param buffers
+	 *            The bytes to write
+	 * @throws IOException
+	 *             If the bytes cannot be written
+	 */
+	private static void write(WritableByteChannel channel,
+			ByteBuffer... buffers) throws IOException {
+		for (ByteBuffer buffer : buffers) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads a channel until it ends.
+	 * 
+	 * @param channel
+	 *            Where to read the bytes
+	 * @return The bytes read, ready to be read from the start
+	 * @throws IOException
+	 *             If the bytes cannot be read
+	 */
+	private static ByteBuffer readAll(ReadableByteChannel channel)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				bigger.put(buffer);
+				buffer = bigger;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Gives each state reachable from the map an index, and writes the data
+	 * of each one.
+	 */
+	private static class Writer implements StateWriter {
+
+		/**
+		 * The store whose cells are written.
+		 */
+		private CellStore store;
+
+		/**
+		 * The index of each state found so far. Index 0 is null.
+		 */
+		private Map<State, Integer> indices = new IdentityHashMap<State, Integer>();
+
+		/**
+		 * The states found so far, in order of their indices minus one.
+		 */
+		private List<State> states = new ArrayList<State>();
+
+		/**
+		 * The classes of the states, followed by each state's class index,
+		 * then the data of every state.
+		 */
+		private ByteBuffer classes;
+
+		/**
+		 * The data written by the states.
+		 */
+		private ByteBuffer data = ByteBuffer.allocate(1 << 12);
+
+		/**
+		 * Creates a writer for the states of a store.
+		 * 
+		 * @param store
+		 *            The store being saved
+		 */
+		private Writer(CellStore store) {
+			this.store = store;
+		}
+
+		/**
+		 * Get the index of a state, giving it one if it is new.
+		 * 
+		 * @param state
+		 *            A state, or null
+		 * @return The index of the state, or 0 for null
+		 */
+		private int getIndex(State state) {
+			if (state == null) {
+				return 0;
+			}
+			Integer index = indices.get(state);
+			if (index == null) {
+				states.add(state);
+				index = states.size();
+				indices.put(state, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Writes the class and data of every state found, including the
+		 * states found while writing.
+		 */
+		private void saveStates() {
+			for (int i = 0; i < states.size(); i++) {
+				State state = states.get(i);
+				if (state instanceof Savable) {
+					((Savable) state).save(this);
+				} else if (!StateRegistry.isStateless(state.getClass())) {
+					throw new RuntimeException(state.getClass().getName()
+							+ " has data but does not implement Savable.");
+				}
+			}
+			Map<Class<?>, Integer> classIndices = new HashMap<Class<?>, Integer>();
+			List<byte[]> names = new ArrayList<byte[]>();
+			int bytes = 12 + 4 * states.size();
+			for (State state : states) {
+				if (!classIndices.containsKey(state.getClass())) {
+					classIndices.put(state.getClass(), names.size());
+					byte[] name = state.getClass().getName()
+							.getBytes(StandardCharsets.UTF_8);
+					names.add(name);
+					bytes += 4 + name.length;
+				}
+			}
+			classes = ByteBuffer.allocate(bytes);
+			classes.putInt(names.size());
+			for (byte[] name : names) {
+				putBytes(classes, name);
+			}
+			classes.putInt(states.size());
+			for (State state : states) {
+				classes.putInt(classIndices.get(state.getClass()));
+			}
+			data.flip();
+			classes.putInt(data.remaining());
+			classes.flip();
+		}
+
+		/**
+		 * Get the bytes written for the states.
+		 * 
+		 * @return The classes, then the data of the states
+		 */
+		private ByteBuffer[] getBuffers() {
+			return new ByteBuffer[] { classes, data };
+		}
+
+		/**
+		 * Makes room for more data.
+		 * 
+		 * @param bytes
+		 *            The number of bytes about to be written
+		 */
+		private void reserve(int bytes) {
+			if (data.remaining() < bytes) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(
+						data.capacity() * 2, data.position() + bytes));
+				data.flip();
+				bigger.put(data);
+				data = bigger;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateWriter#writeInt(int)
+		 */
+		@Override
+		public void writeInt(int value) {
+			reserve(4);
+			data.putInt(value);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateWriter#writeCell(graph.Cell)
+		 */
+		@Override
+		public void writeCell(Cell cell) {
+			if (cell != null && store.getCell(cell.getId()) != cell) {
+				throw new RuntimeException(
+						"A state refers to a cell of another map.");
+			}
+			writeInt(cell == null ? -1 : cell.getId());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateWriter#writeState(state.State)
+		 */
+		@Override
+		public void writeState(State state) {
+			writeInt(getIndex(state));
+		}
+	}
+
+	/**
+	 * Creates the states of a checkpoint and restores their data.
+	 */
+	private static class Reader implements StateReader {
+
+		/**
+		 * The store of the restored map.
+		 */
+		private CellStore store;
+
+		/**
+		 * The restored states by index. Index 0 is null.
+		 */
+		private State[] states;
+
+		/**
+		 * The data of the states.
+		 */
+		private ByteBuffer data;
+
+		/**
+		 * Creates a reader for the data of some states.
+		 * 
+		 * @param store
+		 *            The store of the restored map
+		 * @param states
+		 *            The states, created but not yet restored
+		 * @param data
+		 *            The data of the states
+		 */
+		private Reader(CellStore store, State[] states, ByteBuffer data) {
+			this.store = store;
+			this.states = states;
+			this.data = data;
+		}
+
+		/**
+		 * Reads the classes of the states, creates them and restores their
+		 * data. Stateless states are not created, but resolved to the
+		 * instance the game already shares.
+		 * 
+		 * @param in
+		 *            The bytes written by Writer
+		 * @param store
+		 *            The store of the restored map
+		 * @return The restored states by index, with null at index 0
+		 */
+		private static State[] restoreStates(ByteBuffer in, CellStore store) {
+			int count = in.getInt();
+			List<Class<? extends State>> classes = new ArrayList<Class<? extends State>>();
+			for (int i = 0; i < count; i++) {
+				classes.add(findClass(getString(in), State.class));
+			}
+			State[] shared = new State[count];
+			State[] states = new State[in.getInt() + 1];
+			for (int i = 1; i < states.length; i++) {
+				int c = in.getInt();
+				if (shared[c] != null) {
+					states[i] = shared[c];
+					continue;
+				}
+				if (StateRegistry.isStateless(classes.get(c))) {
+					shared[c] = findShared(classes.get(c));
+					states[i] = shared[c];
+				} else {
+					states[i] = create(classes.get(c));
+				}
+			}
+			int length = in.getInt();
+			ByteBuffer data = in.slice();
+			data.limit(length);
+			Reader reader = new Reader(store, states, data);
+			for (int i = 1; i < states.length; i++) {
+				if (states[i] instanceof Savable) {
+					((Savable) states[i]).restore(reader);
+				}
+			}
+			return states;
+		}
+
+		/**
+		 * Finds the instance of a stateless class that the running game
+		 * shares: the one registered for map files, or else the class's
+		 * public static INSTANCE field. A class with neither is created once
+		 * for the whole checkpoint.
+		 * 
+		 * @param clazz
+		 *            A state class without instance fields
+		 * @return The shared state
+		 */
+		private static State findShared(Class<? extends State> clazz) {
+			State state = Config.getStates().getShared(clazz);
+			if (state != null) {
+				return state;
+			}
+			try {
+				Field field = clazz.getField("INSTANCE");
+				if (Modifier.isStatic(field.getModifiers())
+						&& clazz.isInstance(field.get(null))) {
+					return clazz.cast(field.get(null));
+				}
+			} catch (NoSuchFieldException e) {
+				// Fall back on creating the state.
+			} catch (IllegalAccessException e) {
+				// Fall back on creating the state.
+			}
+			return create(clazz);
+		}
+
+		/**
+		 * Creates a state with its constructor that takes no arguments.
+		 * 
+		 * @param clazz
+		 *            A state class
+		 * @return A new state
+		 */
+		private static State create(Class<? extends State> clazz) {
+			try {
+				Constructor<? extends State> constructor = clazz
+						.getDeclaredConstructor();
+				constructor.setAccessible(true);
+				return constructor.newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException("Unable to create an instance for "
+						+ clazz.getName());
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateReader#readInt()
+		 */
+		@Override
+		public int readInt() {
+			return data.getInt();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateReader#readCell()
+		 */
+		@Override
+		public Cell readCell() {
+			int id = data.getInt();
+			return id < 0 ? null : store.getCell(id);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateReader#readState()
+		 */
+		@Override
+		public State readState() {
+			return states[data.getInt()];
+		}
+	}
+}
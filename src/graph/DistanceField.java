@@ -0,0 +1,643 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * Holds the inverted distance of every cell in a CellStore from the mouse, and
+ * floods it with a breadth first search. The search visits each reached cell
+ * once and keeps its frontier in a queue that is allocated with the store, so
+ * the distance cap can be raised without recursion or garbage.
+ * <p>
+ * Each distance is stamped with the epoch it was written in. Clearing the
+ * field starts a new epoch, and distances from older epochs read as 0, so
+ * clearing never has to touch the cells that the last flood reached.
+ * <p>
+ * In incremental mode the field is kept current instead of being flooded
+ * every frame. The store reports every cell that becomes blocked or open, and
+ * the next read repairs only the cells whose distance depended on that
+ * change. Moving the target shifts every distance in the field, so a new
+ * target is flooded from scratch.
+ *
+ * @author Brian Nakayama
+ * @see graph.CellStore
+ */
+public class DistanceField {
+
+	/**
+	 * Marks a cell that has not changed since the field was last repaired.
+	 */
+	private static final byte UNCHANGED = 0;
+
+	/**
+	 * Marks a changed cell that was open or passable when last repaired.
+	 */
+	private static final byte WAS_OPEN = 1;
+
+	/**
+	 * Marks a changed cell that was blocked when last repaired.
+	 */
+	private static final byte WAS_BLOCKED = 2;
+
+	/**
+	 * The store whose cells this field measures.
+	 */
+	private CellStore store;
+
+	/**
+	 * The inverted distance of each cell from the mouse in the low 32 bits,
+	 * and the epoch it was written in in the high 32 bits.
+	 */
+	private long[] distances;
+
+	/**
+	 * The current epoch. Distances stamped with any other epoch are stale.
+	 */
+	private int epoch = 1;
+
+	/**
+	 * The frontier of the breadth first search, reused by every flood.
+	 */
+	private int[] queue;
+
+	/**
+	 * The maximum distance that we will allow path finding for.
+	 */
+	private int maxDistance;
+
+	/**
+	 * True iff the field is repaired as cells change instead of being flooded
+	 * every frame.
+	 */
+	private boolean incremental = false;
+
+	/**
+	 * True iff reads should not repair the field, because several threads
+	 * are reading it at once.
+	 */
+	private boolean frozen = false;
+
+	/**
+	 * The id of the cell the field was last flooded from, or -1 if the field
+	 * must be flooded again.
+	 */
+	private int target = -1;
+
+	/**
+	 * For each cell, whether it changed since the last repair and what it was
+	 * before.
+	 *
+	 * @see #UNCHANGED
+	 * @see #WAS_OPEN
+	 * @see #WAS_BLOCKED
+	 */
+	private byte[] changes;
+
+	/**
+	 * The ids of the cells that changed since the last repair.
+	 */
+	private int[] changed;
+
+	/**
+	 * The number of cells that changed since the last repair.
+	 */
+	private int changedCount = 0;
+
+	/**
+	 * The cells bordering a repaired region, sorted by distance. Each entry
+	 * holds a distance in the high 32 bits and a cell id in the low 32 bits.
+	 */
+	private long[] border;
+
+	/**
+	 * Marks the cells already added to the border in the current repair.
+	 */
+	private int[] borderMarks;
+
+	/**
+	 * The stamp for cells added to the border in the current repair.
+	 */
+	private int borderMark = 0;
+
+	/**
+	 * The cells whose distances may have changed since the updates were
+	 * last cleared, or null unless updates are tracked.
+	 */
+	private CellSet updated;
+
+	/**
+	 * The cells given a distance in the current epoch, while updates are
+	 * tracked. Clearing the field changes all of them at once.
+	 */
+	private int[] reached;
+
+	/**
+	 * The number of cells given a distance in the current epoch.
+	 */
+	private int reachedCount = 0;
+
+	/**
+	 * Creates an empty field for the cells of a store.
+	 *
+	 * @param store
+	 *            The store to measure
+	 * @param maxDistance
+	 *            The maximum distance that we will allow path finding for
+	 */
+	public DistanceField(CellStore store, int maxDistance) {
+		this.store = store;
+		this.maxDistance = maxDistance;
+		distances = new long[store.size()];
+		queue = new int[store.size()];
+	}
+
+	/**
+	 * Set the maximum distance that we will allow path finding for.
+	 *
+	 * @param maxDistance
+	 *            The maximum distance in cells
+	 */
+	public void setMaxDistance(int maxDistance) {
+		this.maxDistance = maxDistance;
+		target = -1;
+	}
+
+	/**
+	 * Get the maximum distance that we will allow path finding for.
+	 *
+	 * @return The maximum distance in cells
+	 */
+	public int getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * Set whether the field is repaired as cells change instead of being
+	 * flooded every frame.
+	 *
+	 * @param incremental
+	 *            True iff the field should be repaired incrementally
+	 * @see #setTarget(int)
+	 */
+	public void setIncremental(boolean incremental) {
+		if (incremental && changes == null) {
+			changes = new byte[distances.length];
+			changed = new int[distances.length];
+			border = new long[distances.length];
+			borderMarks = new int[distances.length];
+		}
+		this.incremental = incremental;
+		target = -1;
+		discardChanges();
+	}
+
+	/**
+	 * Get whether the field is repaired as cells change.
+	 *
+	 * @return True iff the field is repaired incrementally
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Get the inverted distance of a cell from the mouse. In incremental mode
+	 * this first repairs the field around any cells that changed.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The inverted distance, or 0 if the mouse is out of reach
+	 */
+	public int get(int id) {
+		if (!frozen && changedCount > 0) {
+			repair();
+		}
+		return value(id);
+	}
+
+	/**
+	 * Set whether reads are allowed to repair the field. While frozen, the
+	 * field keeps the distances it had when it was frozen, and changes are
+	 * only recorded, so it can be read from several threads at once.
+	 *
+	 * @param frozen
+	 *            True iff the field should be held still
+	 * @see #repairChanges()
+	 */
+	public void setFrozen(boolean frozen) {
+		this.frozen = frozen;
+	}
+
+	/**
+	 * Repairs the field around every cell that changed since the last
+	 * repair, even if the field is frozen.
+	 */
+	public void repairChanges() {
+		if (changedCount > 0) {
+			repair();
+		}
+	}
+
+	/**
+	 * Get the inverted distance of a cell without repairing the field.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return The stored inverted distance
+	 */
+	private int value(int id) {
+		long stamped = distances[id];
+		if ((int) (stamped >>> 32) != epoch) {
+			return 0;
+		}
+		return (int) stamped;
+	}
+
+	/**
+	 * Set the inverted distance of a cell in the current epoch.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param distance
+	 *            The inverted distance
+	 */
+	private void set(int id, int distance) {
+		if (updated != null) {
+			if ((int) (distances[id] >>> 32) != epoch) {
+				reached[reachedCount++] = id;
+			}
+			updated.add(id);
+		}
+		distances[id] = ((long) epoch << 32) | (distance & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Floods the field outwards from the cell under the mouse. The cell under
+	 * the mouse gets the maximum distance, and each step away through open or
+	 * passable cells lowers it by one. Cells keep the larger of their current
+	 * and flooded values.
+	 *
+	 * @param source
+	 *            The id of the cell under the mouse
+	 */
+	public void flood(int source) {
+		if (store.getCode(source) == CellStore.BLOCKED) {
+			return;
+		}
+		set(source, maxDistance);
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			int id = queue[head++];
+			int distance = value(id) - 1;
+			if (distance <= 0) {
+				continue;
+			}
+			for (int i = store.getNeighborStart(id); i < store
+					.getNeighborEnd(id); i++) {
+				int neighbor = store.getNeighborId(i);
+				if (value(neighbor) < distance
+						&& store.getCode(neighbor) != CellStore.BLOCKED) {
+					set(neighbor, distance);
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Points the field at the cell under the mouse. In incremental mode the
+	 * field is only flooded again when the target moves; otherwise it is
+	 * cleared and flooded.
+	 *
+	 * @param id
+	 *            The id of the cell under the mouse
+	 */
+	public void setTarget(int id) {
+		if (!incremental) {
+			clear();
+			flood(id);
+		} else if (id != target) {
+			target = id;
+			discardChanges();
+			clear();
+			flood(id);
+		}
+	}
+
+	/**
+	 * Records that a cell became blocked or open. Called by the store whenever
+	 * a state change alters whether a cell can be passed through, possibly
+	 * from several tiles at once.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param wasBlocked
+	 *            True iff the cell was blocked before the change
+	 */
+	public synchronized void changed(int id, boolean wasBlocked) {
+		if (incremental && target >= 0 && changes[id] == UNCHANGED) {
+			changes[id] = wasBlocked ? WAS_BLOCKED : WAS_OPEN;
+			changed[changedCount++] = id;
+		}
+	}
+
+	/**
+	 * Forgets every recorded change, for when the field is about to be
+	 * flooded again anyway.
+	 */
+	private void discardChanges() {
+		for (int i = 0; i < changedCount; i++) {
+			changes[changed[i]] = UNCHANGED;
+		}
+		changedCount = 0;
+	}
+
+	/**
+	 * Whether the field currently treats a cell as blocked. Cells that changed
+	 * but have not been repaired yet are treated as they were before, so each
+	 * repair sees a consistent map.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @return True iff the field treats the cell as blocked
+	 */
+	private boolean blocked(int id) {
+		byte change = changes[id];
+		if (change == UNCHANGED) {
+			return store.getCode(id) == CellStore.BLOCKED;
+		}
+		return change == WAS_BLOCKED;
+	}
+
+	/**
+	 * Repairs the field around every cell that changed, one cell at a time.
+	 */
+	private void repair() {
+		for (int i = 0; i < changedCount; i++) {
+			int id = changed[i];
+			boolean wasBlocked = changes[id] == WAS_BLOCKED;
+			changes[id] = UNCHANGED;
+			boolean isBlocked = store.getCode(id) == CellStore.BLOCKED;
+			if (wasBlocked && !isBlocked) {
+				opened(id);
+			} else if (!wasBlocked && isBlocked) {
+				blockedCell(id);
+			}
+		}
+		changedCount = 0;
+	}
+
+	/**
+	 * Repairs the field after a cell opens, raising the distance of the cell
+	 * and of every cell that is now closer to the target through it.
+	 *
+	 * @param id
+	 *            The cell that opened
+	 */
+	private void opened(int id) {
+		int distance = 0;
+		if (id == target) {
+			distance = maxDistance;
+		} else {
+			for (int i = store.getNeighborStart(id); i < store
+					.getNeighborEnd(id); i++) {
+				distance = Math.max(distance,
+						value(store.getNeighborId(i)) - 1);
+			}
+		}
+		if (distance > value(id)) {
+			set(id, distance);
+			queue[0] = id;
+			spread(0, 1);
+		}
+	}
+
+	/**
+	 * Repairs the field after a cell becomes blocked. First every cell whose
+	 * distance only came through the blocked cell is reset, nearest first.
+	 * Then the reset cells are flooded again from the cells around them.
+	 *
+	 * @param id
+	 *            The cell that became blocked
+	 */
+	private void blockedCell(int id) {
+		int distance = value(id);
+		if (distance == 0) {
+			return;
+		}
+		set(id, 0);
+		// Each reset cell is queued with its old distance, one level at a
+		// time, so a cell's support is checked after every reset above it.
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = id;
+		border[0] = distance;
+		while (head < tail) {
+			int reset = queue[head];
+			int child = (int) border[head] - 1;
+			head++;
+			if (child <= 0) {
+				continue;
+			}
+			for (int i = store.getNeighborStart(reset); i < store
+					.getNeighborEnd(reset); i++) {
+				int neighbor = store.getNeighborId(i);
+				if (value(neighbor) == child && !supported(neighbor, child)) {
+					set(neighbor, 0);
+					queue[tail] = neighbor;
+					border[tail] = child;
+					tail++;
+				}
+			}
+		}
+
+		// Collect the cells around the reset region, which kept their
+		// distances, and flood back into the region from them.
+		borderMark++;
+		if (borderMark == 0) {
+			Arrays.fill(borderMarks, 0);
+			borderMark = 1;
+		}
+		int count = 0;
+		for (int r = 0; r < tail; r++) {
+			int reset = queue[r];
+			for (int i = store.getNeighborStart(reset); i < store
+					.getNeighborEnd(reset); i++) {
+				int neighbor = store.getNeighborId(i);
+				int value = value(neighbor);
+				if (value > 1 && borderMarks[neighbor] != borderMark) {
+					borderMarks[neighbor] = borderMark;
+					border[count++] = ((long) value << 32) | neighbor;
+				}
+			}
+		}
+		Arrays.sort(border, 0, count);
+		spreadFromBorder(count);
+	}
+
+	/**
+	 * Whether a cell still has a neighbor one step closer to the target.
+	 *
+	 * @param id
+	 *            A cell id
+	 * @param distance
+	 *            The cell's distance
+	 * @return True iff a neighbor has a distance one higher
+	 */
+	private boolean supported(int id, int distance) {
+		for (int i = store.getNeighborStart(id); i < store.getNeighborEnd(id); i++) {
+			if (value(store.getNeighborId(i)) == distance + 1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Continues a breadth first search from the cells already in the queue,
+	 * raising the distance of every cell that can be reached more closely.
+	 *
+	 * @param head
+	 *            The index of the first queued cell
+	 * @param tail
+	 *            The index after the last queued cell
+	 */
+	private void spread(int head, int tail) {
+		while (head < tail) {
+			int id = queue[head++];
+			int distance = value(id) - 1;
+			if (distance <= 0) {
+				continue;
+			}
+			for (int i = store.getNeighborStart(id); i < store
+					.getNeighborEnd(id); i++) {
+				int neighbor = store.getNeighborId(i);
+				if (value(neighbor) < distance && !blocked(neighbor)) {
+					set(neighbor, distance);
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Floods from the sorted border cells. The border and the queue are
+	 * merged so that cells are always expanded from the largest distance
+	 * down, which keeps the search to one visit per cell.
+	 *
+	 * @param count
+	 *            The number of border cells
+	 */
+	private void spreadFromBorder(int count) {
+		int next = count - 1;
+		int head = 0;
+		int tail = 0;
+		while (next >= 0 || head < tail) {
+			int id;
+			if (next >= 0
+					&& (head == tail || (int) (border[next] >>> 32) >= value(queue[head]))) {
+				id = (int) border[next--];
+			} else {
+				id = queue[head++];
+			}
+			int distance = value(id) - 1;
+			if (distance <= 0) {
+				continue;
+			}
+			for (int i = store.getNeighborStart(id); i < store
+					.getNeighborEnd(id); i++) {
+				int neighbor = store.getNeighborId(i);
+				if (value(neighbor) < distance && !blocked(neighbor)) {
+					set(neighbor, distance);
+					queue[tail++] = neighbor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resets the distance of a cell.
+	 *
+	 * @param id
+	 *            A cell id
+	 */
+	public void clear(int id) {
+		set(id, 0);
+	}
+
+	/**
+	 * Resets the distance of every cell by starting a new epoch. The stamps
+	 * are only swept when the epoch counter wraps around.
+	 */
+	public void clear() {
+		if (updated != null) {
+			for (int i = 0; i < reachedCount; i++) {
+				updated.add(reached[i]);
+			}
+			reachedCount = 0;
+		}
+		epoch++;
+		if (epoch == 0) {
+			Arrays.fill(distances, 0);
+			epoch = 1;
+		}
+	}
+
+	/**
+	 * Set whether the cells whose distances may have changed should be
+	 * remembered until the updates are cleared. Used to copy and redraw only
+	 * the distances that changed. A cell is remembered whenever its distance
+	 * is written, even with the value it had, and every reached cell is
+	 * remembered when the field is cleared.
+	 *
+	 * @param track
+	 *            True iff updates should be tracked
+	 */
+	public void setTrackUpdates(boolean track) {
+		if (!track) {
+			updated = null;
+			reached = null;
+			reachedCount = 0;
+		} else if (updated == null) {
+			updated = new CellSet(distances.length);
+			reached = new int[distances.length];
+			for (int id = 0; id < distances.length; id++) {
+				if ((int) (distances[id] >>> 32) == epoch) {
+					reached[reachedCount++] = id;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of cells whose distances may have changed since the
+	 * updates were last cleared.
+	 *
+	 * @return The number of updated cells, or 0 if updates are not tracked
+	 */
+	public int getUpdatedCount() {
+		return updated == null ? 0 : updated.size();
+	}
+
+	/**
+	 * Get a cell whose distance may have changed since the updates were last
+	 * cleared.
+	 *
+	 * @param index
+	 *            A position between 0 and the number of updated cells
+	 * @return The id of an updated cell
+	 */
+	public int getUpdatedId(int index) {
+		return updated.get(index);
+	}
+
+	/**
+	 * Forgets the cells whose distances may have changed.
+	 */
+	public void clearUpdates() {
+		if (updated != null) {
+			updated.clear();
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package graph;
+
+/**
+ * Listens for the end of a game on a GraphMap.
+ * 
+ * @author Brian Nakayama
+ * @see graph.GraphMap#setGameOverListener(GameOverListener)
+ */
+public interface GameOverListener {
+
+	/**
+	 * Called once when a game ends. This may be called from a worker thread if
+	 * the map updates in parallel.
+	 * 
+	 * @param score
+	 *            The final score
+	 */
+	public void gameOver(int score);
+}
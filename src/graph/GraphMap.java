@@ -2,10 +2,10 @@ package graph;
 
 import java.awt.Point;
 import java.awt.Polygon;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import main.Config;
 
@@ -13,6 +13,8 @@ import color.ColorGenerator;
 
 import clock.Updatable;
 import state.State;
+import state.StateFactory;
+import state.StateRegistry;
 
 /**
  * Contains all of the methods common to any 2D based graph of Cells. Contains
@@ -28,6 +30,10 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 * pattern.
 	 */
 	private Cell[][] cells;
+	/**
+	 * Holds the data of every cell in flat arrays.
+	 */
+	private CellStore store;
 	/**
 	 * The last cell that food was present in.
 	 * 
@@ -42,6 +48,15 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 * The current y position of the cell the mouse is over.
 	 */
 	private int mouseY;
+	/**
+	 * The cell the snakes move toward instead of the mouse, or null to follow
+	 * the mouse.
+	 */
+	private Cell fixedTarget;
+	/**
+	 * The cell the snakes moved toward on the last update.
+	 */
+	private Cell target;
 	/**
 	 * Picks colors for cells.
 	 */
@@ -51,23 +66,61 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 */
 	private boolean createFood = true;
 	/**
-	 * The number generator used for selecting coloring cells.
+	 * The number generator used for selecting coloring cells and creating
+	 * food. Split from Config.RANDOM, and split again for the store and each
+	 * tile.
 	 * @see #initialize()
 	 * @see color.ColorGenerator
 	 */
-	private Random r = Config.RANDOM;
+	private RandomSource r = Config.RANDOM.split();
 	/**
-	 * The class for the Food State (to be implemented later).
+	 * The factory for the Food State.
 	 */
-	private Class<? extends State> food = Config.STATES.get('F');
+	private StateFactory food = Config.getStates().get('F');
 	/**
-	 * The class for the Crab State (to be implemented later).
+	 * The class of the Food State, used to check if food is still on the
+	 * map.
 	 */
-	private Class<? extends State> crab = Config.STATES.get('D');
+	private Class<? extends State> foodType = Config.getStates().getType('F');
+	/**
+	 * The factory for the Crab State.
+	 */
+	private StateFactory crab = Config.getStates().get('D');
 	/**
 	 * The distance (in pixels) between cells.
 	 */
 	private int distance = Config.GRAPH_DISTANCE;
+	/**
+	 * Counts changes to the size and placement of the cells' polygons.
+	 */
+	private int geometryVersion = 0;
+	/**
+	 * The maximum distance in cells that we will allow path finding for.
+	 */
+	private int maxMouseDistance = Config.MAX_MOUSE_DISTANCE;
+	/**
+	 * True iff the distances from the mouse are repaired as cells change
+	 * instead of being flooded every frame.
+	 */
+	private boolean incrementalDistances = false;
+	/**
+	 * The width and height in cells of the tiles updated in parallel, or 0 to
+	 * update every cell on one thread.
+	 */
+	private int tileSize = 0;
+	/**
+	 * Updates tiles of cells in parallel, or null to update on one thread.
+	 */
+	private TileScheduler scheduler;
+	/**
+	 * True iff each frame reads one generation of states and writes the
+	 * next.
+	 */
+	private boolean synchronous = false;
+	/**
+	 * Told when the game ends, or null.
+	 */
+	private GameOverListener gameOverListener;
 
 
 	/**
@@ -83,8 +136,7 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 			throw new RuntimeException(
 					"Unable to create a default color generator.");
 		}
-		Class<? extends State> food = Config.STATES.get('F');
-		if (food == null) {
+		if (food == null || foodType == null) {
 			createFood = false;
 		}
 
@@ -119,34 +171,55 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 * @param descriptor
 	 *            an array of strings representing a 2d grid of characters.
 	 */
-	public void initialize(String[] descriptor) {
-		List<Cell[]> cellList = new ArrayList<Cell[]>();
-		int y = 0;
-		for (String line : descriptor) {
-			Cell[] cellRow = new Cell[line.length()];
-			for (int x = 0; x < cellRow.length; x++) {
-				cellRow[x] = new Cell(gen.createColor(), createPolygon(x, y));
-				char c = line.charAt(x);
-				Class<? extends State> clazz = Config.STATES.get(c);
-				try {
-					if (clazz != null) {
-						cellRow[x].setState(clazz.newInstance());
-					}
-				} catch (Exception e) {
-					System.out.println("Unable to create an instance for "
-							+ clazz.getName());
-				}
+	public void initialize(final String[] descriptor) {
+		initialize(new MapRows() {
 
+			@Override
+			public int getHeight() {
+				return descriptor.length;
 			}
-			y++;
-			cellList.add(cellRow);
+
+			@Override
+			public int getWidth(int y) {
+				return descriptor[y].length();
+			}
+
+			@Override
+			public char getChar(int x, int y) {
+				return descriptor[y].charAt(x);
+			}
+		});
+	}
+
+	/**
+	 * Fills this map with cells, reading each cell's character straight from
+	 * the rows. Nothing is copied out of the rows, so they can be as large as
+	 * the map itself. Every character must be registered with a state or be
+	 * one of StateRegistry.EMPTY.
+	 * 
+	 * @param rows
+	 *            The rows of a 2d grid of characters
+	 * @see #initialize(String[])
+	 */
+	public void initialize(MapRows rows) {
+		int[] rowLengths = new int[rows.getHeight()];
+		for (int y = 0; y < rowLengths.length; y++) {
+			rowLengths[y] = rows.getWidth(y);
 		}
-		cells = cellList.toArray(new Cell[0][]);
-		for (y = 0; y < cells.length; y++) {
+		createCells(rowLengths);
+		// Cells are linked in id order, so they are linked in the same pass
+		// that reads their states.
+		StateRegistry states = Config.getStates();
+		for (int y = 0; y < cells.length; y++) {
 			for (int x = 0; x < cells[y].length; x++) {
-				cells[y][x].setNeighbors(createNeighbors(x, y));
+				store.linkNeighbors(createNeighbors(x, y));
+				StateFactory factory = states.getForMap(rows.getChar(x, y));
+				if (factory != null) {
+					cells[y][x].setState(factory.create());
+				}
 			}
 		}
+		createScheduler();
 		lastFoodCell = cells[0][0];
 	}
 
@@ -156,27 +229,85 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 * @see main.Config
 	 */
 	public void initialize() {
-		cells = new Cell[Config.GRAPH_DEFAULT_HEIGHT][Config.GRAPH_DEFAULT_WIDTH];
+		int[] rowLengths = new int[Config.GRAPH_DEFAULT_HEIGHT];
+		Arrays.fill(rowLengths, Config.GRAPH_DEFAULT_WIDTH);
+		createCells(rowLengths);
+		linkCells();
+
+		StateFactory snake = Config.getStates().get('S');
+		if (snake == null) {
+			System.out.println("Unable to create a snake for the default map.");
+		} else {
+			cells[cells[0].length / 2][cells.length / 2].setState(snake
+					.create());
+		}
+		lastFoodCell = cells[0][0];
+	}
+
+	/**
+	 * Creates the store and the cells for rows of the given lengths, giving
+	 * each cell a color.
+	 * 
+	 * @param rowLengths
+	 *            The number of cells in each row
+	 */
+	private void createCells(int[] rowLengths) {
+		createCells(rowLengths, true);
+	}
+
+	/**
+	 * Creates the store and the cells for rows of the given lengths.
+	 * 
+	 * @param rowLengths
+	 *            The number of cells in each row
+	 * @param colored
+	 *            True iff each cell should be given a color from the
+	 *            generator
+	 */
+	private void createCells(int[] rowLengths, boolean colored) {
+		store = new CellStore(rowLengths, r.split());
+		geometryVersion++;
+		store.getDistances().setMaxDistance(maxMouseDistance);
+		store.getDistances().setIncremental(incrementalDistances);
+		store.setSynchronous(synchronous);
+		store.setGameOverListener(gameOverListener);
+		cells = new Cell[rowLengths.length][];
 		for (int y = 0; y < cells.length; y++) {
+			cells[y] = new Cell[rowLengths[y]];
 			for (int x = 0; x < cells[y].length; x++) {
-				cells[y][x] = new Cell(gen.createColor(), createPolygon(x, y));
+				int id = store.getId(x, y);
+				cells[y][x] = store.getCell(id);
+				if (colored) {
+					store.setColor(id, gen.createColor(r));
+				}
 			}
 		}
+	}
+
+	/**
+	 * Cuts the cells into tiles if this map updates in parallel.
+	 */
+	private void createScheduler() {
+		if (tileSize > 0 && store != null) {
+			scheduler = new TileScheduler(store, tileSize, r,
+					ForkJoinPool.commonPool());
+		} else {
+			scheduler = null;
+		}
+	}
 
+	/**
+	 * Links every cell to its neighbors in id order.
+	 * 
+	 * @see #createNeighbors(int, int)
+	 */
+	private void linkCells() {
 		for (int y = 0; y < cells.length; y++) {
 			for (int x = 0; x < cells[y].length; x++) {
-				cells[y][x].setNeighbors(createNeighbors(x, y));
+				store.linkNeighbors(createNeighbors(x, y));
 			}
 		}
-
-		Class<? extends State> snake = Config.STATES.get('S');
-		try {
-			cells[cells[0].length / 2][cells.length / 2].setState(snake
-					.newInstance());
-		} catch (Exception e) {
-			System.out.println("Unable to create a snake for the default map.");
-		}
-		lastFoodCell = cells[0][0];
+		createScheduler();
 	}
 
 	/**
@@ -197,6 +328,116 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 */
 	public void setDistance(int distance) {
 		this.distance = distance;
+		geometryVersion++;
+	}
+
+	/**
+	 * Get a number that changes whenever the size or placement of the cells'
+	 * polygons may have changed, so anything drawn from them can be thrown
+	 * away.
+	 * 
+	 * @return The version of the geometry
+	 */
+	public int getGeometryVersion() {
+		return geometryVersion;
+	}
+
+	/**
+	 * Set the maximum distance in cells that we will allow path finding for.
+	 * Large maps can raise this well beyond the default.
+	 * 
+	 * @param maxMouseDistance
+	 *            The maximum distance in cells
+	 */
+	public void setMaxMouseDistance(int maxMouseDistance) {
+		this.maxMouseDistance = maxMouseDistance;
+		if (store != null) {
+			store.getDistances().setMaxDistance(maxMouseDistance);
+		}
+	}
+
+	/**
+	 * Set whether the distances from the mouse are repaired as cells change
+	 * instead of being flooded every frame. When repaired, the distances
+	 * always reflect the current map, even partway through a frame.
+	 * 
+	 * @param incrementalDistances
+	 *            True iff the distances should be repaired incrementally
+	 * @see graph.DistanceField#setIncremental(boolean)
+	 */
+	public void setIncrementalDistances(boolean incrementalDistances) {
+		this.incrementalDistances = incrementalDistances;
+		if (store != null) {
+			store.getDistances().setIncremental(incrementalDistances);
+		}
+	}
+
+	/**
+	 * Set the size of the tiles that are updated in parallel. Each frame, the
+	 * tiles are updated in four phases on all available cores. For a seeded
+	 * game the result only depends on the tile size, but it differs from the
+	 * result of updating on one thread.
+	 * 
+	 * @param tileSize
+	 *            The width and height of a tile in cells (at least 2), or 0 to
+	 *            update every cell on one thread
+	 * @see graph.TileScheduler
+	 */
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+		createScheduler();
+	}
+
+	/**
+	 * Set whether each frame is a synchronous step, like a cellular
+	 * automaton. Every state is handled against the same generation of the
+	 * map, and the moves they ask for are written to the next generation
+	 * together. When two states move into the same cell, the one from the
+	 * cell with the lowest id wins and the other stays put. The result does
+	 * not depend on scan order, and tiles updated in parallel need no phases.
+	 * 
+	 * @param synchronous
+	 *            True iff frames should be synchronous
+	 * @see graph.CellStore#setSynchronous(boolean)
+	 */
+	public void setSynchronous(boolean synchronous) {
+		this.synchronous = synchronous;
+		if (store != null) {
+			store.setSynchronous(synchronous);
+		}
+	}
+
+	/**
+	 * Set the listener told when a state ends the game. Ending the game never
+	 * exits the program, so a map can be run without a window.
+	 * 
+	 * @param gameOverListener
+	 *            A listener, or null
+	 */
+	public void setGameOverListener(GameOverListener gameOverListener) {
+		this.gameOverListener = gameOverListener;
+		if (store != null) {
+			store.setGameOverListener(gameOverListener);
+		}
+	}
+
+	/**
+	 * Get whether a state has ended the game. Once the game is over, updating
+	 * the map does nothing.
+	 * 
+	 * @return True iff the game is over
+	 */
+	public boolean isGameOver() {
+		return store.isGameOver();
+	}
+
+	/**
+	 * Get the score the game ended with.
+	 * 
+	 * @return The final score, or 0 if the game is not over
+	 */
+	public int getScore() {
+		return store.getScore();
 	}
 
 	/**
@@ -210,14 +451,13 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	}
 
 	/**
-	 * Clear all distances from the mouse.
+	 * Clear all distances from the mouse. This takes constant time, since
+	 * stale distances are recognized by their epoch.
+	 * 
+	 * @see graph.DistanceField#clear()
 	 */
 	public void clearAllDistances() {
-		for (int y = 0; y < cells.length; y++) {
-			for (int x = 0; x < cells[y].length; x++) {
-				cells[y][x].clearDistance();
-			}
-		}
+		store.getDistances().clear();
 	}
 
 	/**
@@ -252,39 +492,64 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	public void updateMouse(int x, int y) {
 		this.mouseX = x;
 		this.mouseY = y;
+		this.fixedTarget = null;
+	}
+
+	/**
+	 * Make the snakes move toward a cell instead of the mouse, until the mouse
+	 * is next updated. Unlike a position in pixels, this picks the cell
+	 * exactly, so a recorded game can be replayed.
+	 * 
+	 * @param cell
+	 *            A cell of this map
+	 * @see main.Replay
+	 */
+	public void updateTarget(Cell cell) {
+		this.fixedTarget = cell;
+	}
+
+	/**
+	 * Get the cell the snakes moved toward on the last update.
+	 * 
+	 * @return The cell, or null if the map has not updated
+	 */
+	public Cell getTarget() {
+		return target;
+	}
+
+	/**
+	 * Get the cell chosen with updateTarget.
+	 * 
+	 * @return The cell, or null if the snakes follow the mouse
+	 */
+	Cell getFixedTarget() {
+		return fixedTarget;
 	}
 
 	/**
 	 * Randomly create food, and attempt to create a Dungeoness Crab in the map.
+	 * Both are placed on cells picked uniformly from the empty cells, so this
+	 * takes the same time however full the map is. A crab is created as often
+	 * as a cell picked from the whole map would be empty. Nothing is created
+	 * if the map is full.
 	 * @see state.Food
 	 * @see state.DungeonessCrab
 	 */
 	public void createFood() {
-		boolean added = false;
-		do {
-
-			Cell randomCell = cells[r.nextInt(cells.length)][r
-					.nextInt(cells[0].length)];
-			if (randomCell.getState() == null) {
-				added = true;
-				try {
-					randomCell.setState(food.newInstance());
-					lastFoodCell = randomCell;
-				} catch (Exception e) {
-					return;
-				}
-
-				randomCell = cells[r.nextInt(cells.length)][r
-						.nextInt(cells[0].length)];
-				if (randomCell.getState() == null) {
-					try {
-						randomCell.setState(crab.newInstance());
-					} catch (Exception e) {
-						return;
-					}
-				}
-			}
-		} while (!added);
+		if (store.getEmptyCount() == 0) {
+			return;
+		}
+		Cell randomCell = store.getCell(store.getEmptyId(r.nextInt(store
+				.getEmptyCount())));
+		randomCell.setState(food.create());
+		lastFoodCell = randomCell;
+
+		if (crab != null
+				&& r.nextInt(store.size()) < store.getEmptyCount()) {
+			randomCell = store.getCell(store.getEmptyId(r.nextInt(store
+					.getEmptyCount())));
+			randomCell.setState(crab.create());
+		}
 	}
 	
 	/*
@@ -294,15 +559,20 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	 */
 	@Override
 	public void update() {
-		selectClosestCell(mouseX, mouseY).updateMouseDistance();
-
-		for (int y = 0; y < cells.length; y++) {
-			for (int x = 0; x < cells[y].length; x++) {
-				cells[y][x].update();
-			}
+		if (store.isGameOver()) {
+			return;
+		}
+		target = fixedTarget != null ? fixedTarget : selectClosestCell(mouseX,
+				mouseY);
+		store.getDistances().setTarget(target.getId());
+
+		if (scheduler != null) {
+			scheduler.update();
+		} else {
+			store.update();
 		}
 
-		if (createFood && !food.isInstance(lastFoodCell.getState())) {
+		if (createFood && !foodType.isInstance(lastFoodCell.getState())) {
 			createFood();
 		}
 	}
@@ -315,6 +585,99 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 		return distance;
 	}
 	
+	/**
+	 * Creates cells without states or colors for a checkpoint to fill.
+	 * 
+	 * @param rowLengths
+	 *            The number of cells in each row
+	 * @see graph.Checkpoint
+	 */
+	void createEmptyCells(int[] rowLengths) {
+		createCells(rowLengths, false);
+		linkCells();
+		lastFoodCell = cells[0][0];
+	}
+
+	/**
+	 * Writes the settings of this map and the position of the mouse.
+	 * 
+	 * @param out
+	 *            Where to write the settings
+	 * @see graph.Checkpoint
+	 */
+	void saveSettings(ByteBuffer out) {
+		out.putInt(distance);
+		out.put((byte) (createFood ? 1 : 0));
+		out.putInt(maxMouseDistance);
+		out.put((byte) (incrementalDistances ? 1 : 0));
+		out.putInt(tileSize);
+		out.put((byte) (synchronous ? 1 : 0));
+		out.putInt(mouseX);
+		out.putInt(mouseY);
+	}
+
+	/**
+	 * Reads the settings written by saveSettings. Called before the cells are
+	 * created.
+	 * 
+	 * @param in
+	 *            Where to read the settings
+	 */
+	void restoreSettings(ByteBuffer in) {
+		setDistance(in.getInt());
+		setCreateFood(in.get() == 1);
+		setMaxMouseDistance(in.getInt());
+		setIncrementalDistances(in.get() == 1);
+		setTileSize(in.getInt());
+		setSynchronous(in.get() == 1);
+		updateMouse(in.getInt(), in.getInt());
+	}
+
+	/**
+	 * Get the cell where food was last created.
+	 * 
+	 * @return The cell
+	 */
+	Cell getLastFoodCell() {
+		return lastFoodCell;
+	}
+
+	/**
+	 * Set the cell where food was last created.
+	 * 
+	 * @param lastFoodCell
+	 *            The cell
+	 */
+	void setLastFoodCell(Cell lastFoodCell) {
+		this.lastFoodCell = lastFoodCell;
+	}
+
+	/**
+	 * Get the number generator of this map.
+	 * 
+	 * @return The number generator
+	 */
+	RandomSource getRandom() {
+		return r;
+	}
+
+	/**
+	 * Get the scheduler for updating tiles in parallel.
+	 * 
+	 * @return The scheduler, or null if the map updates on one thread
+	 */
+	TileScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Get the store holding the data of every cell.
+	 * @return The store for this map's cells
+	 */
+	public CellStore getStore() {
+		return store;
+	}
+
 	/**
 	 * 
 	 * @return
@@ -362,7 +725,8 @@ public abstract class GraphMap implements Updatable, Iterable<Cell> {
 	protected abstract Point selectClosestIndex(int x, int y);
 
 	/**
-	 * Create a polygon for the cell at index (x, y). 
+	 * Create a polygon for the cell at index (x, y). Cells do not keep their
+	 * polygons, so this is called whenever a cell's shape is needed.
 	 * @param x The x index of a Cell
 	 * @param y The y index of a Cell
 	 * @return A polygon positioned correctly for rendering
@@ -1,16 +1,11 @@
 package graph;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
-
 import main.Config;
 
 import color.ColorGenerator;
 
 /**
- * Creates a graphMap given a text file.
+ * Creates a graphMap given a text or binary map file.
  * 
  * @author Brian Nakayama
  * @see graph.GraphMap
@@ -18,12 +13,13 @@ import color.ColorGenerator;
 public class GraphMapFactory {
 
 	/**
-	 * The location of a GraphMap text file
+	 * The location of a GraphMap file
 	 */
 	private String graphLocation;
 
 	/**
-	 * Store the location for creating graphMaps. Below is an example file:
+	 * Store the location for creating graphMaps. Below is an example text
+	 * file. MapConverter turns text files into smaller binary ones:
 	 * 
 	 * <pre>
 	 * color.RainbowColorGenerator
@@ -58,34 +54,34 @@ public class GraphMapFactory {
 	}
 
 	/**
-	 * Using the graph location, create a new graphMap.
+	 * Using the graph location, create a new graphMap. The file can be text
+	 * or binary, and is mapped into memory so that the cells are read
+	 * straight from it into the map.
 	 * 
 	 * @return The graphMap specified in the file, or a default graphMap if an
 	 *         exception occurs.
+	 * @see graph.MapFile
 	 */
 	public GraphMap createGraphMap() {
 
 		GraphMap map;
 		ColorGenerator gen;
 		try {
-			Scanner s = new Scanner(new File(graphLocation));
-			gen = (ColorGenerator) Class.forName(s.nextLine()).newInstance();
+			MapFile file = MapFile.read(graphLocation);
+			gen = (ColorGenerator) Class.forName(file.getGenerator())
+					.newInstance();
 
 			try {
-				map = (GraphMap) Class.forName(s.next()).newInstance();
-				if (s.hasNextInt()) {
-					map.setDistance(s.nextInt());
-				}
-				if (s.hasNextBoolean()) {
-					map.setCreateFood(s.nextBoolean());
+				map = (GraphMap) Class.forName(file.getGraphMap())
+						.newInstance();
+				if (file.getDistance() >= 0) {
+					map.setDistance(file.getDistance());
 				}
-				s.nextLine();
-				List<String> descriptor = new ArrayList<String>();
-				while (s.hasNext()) {
-					descriptor.add(s.nextLine());
+				if (file.getCreateFood() != null) {
+					map.setCreateFood(file.getCreateFood());
 				}
 				map.setColorGenerator(gen);
-				map.initialize(descriptor.toArray(new String[0]));
+				map.initialize(file.getRows());
 			} catch (Exception e) {
 				System.out.println("Unable to load GraphMap from config."
 						+ " Creating the default map with custom colors.");
@@ -93,7 +89,6 @@ public class GraphMapFactory {
 				map.setColorGenerator(gen);
 				map.initialize();
 			}
-			s.close();
 		} catch (Exception e) {
 			try {
 				System.out.println("Unable to load config."
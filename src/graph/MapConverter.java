@@ -0,0 +1,34 @@
+package graph;
+
+import java.io.IOException;
+
+/**
+ * Converts map files between the text and binary formats.
+ * 
+ * @author Brian Nakayama
+ * @see graph.MapFile
+ */
+public class MapConverter {
+
+	/**
+	 * Converts a map file into the other format.
+	 * 
+	 * @param args
+	 *            The location of a text or binary map file, then the location
+	 *            to write the converted file
+	 * @throws IOException
+	 *             If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: MapConverter <input map> <output map>");
+			return;
+		}
+		MapFile file = MapFile.read(args[0]);
+		if (file.isBinary()) {
+			file.writeText(args[1]);
+		} else {
+			file.writeBinary(args[1]);
+		}
+	}
+}
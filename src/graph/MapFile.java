@@ -0,0 +1,354 @@
+package graph;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The contents of a map file: the names of its color generator and GraphMap,
+ * its optional settings, and its rows of cells. A map file is either text,
+ * as described in GraphMapFactory, or binary. A binary file starts with
+ * MAGIC and VERSION, followed by the two class names, the distance (or -1),
+ * createFood (1, 0, or -1 if not given) and the rows as PackedMapRows.
+ * Either kind is mapped into memory and the rows are read from it directly.
+ * 
+ * @author Brian Nakayama
+ * @see graph.GraphMapFactory
+ * @see graph.MapConverter
+ */
+public class MapFile {
+
+	/**
+	 * The first four bytes of a binary map file, "SNKM".
+	 */
+	public static final int MAGIC = 0x534E4B4D;
+
+	/**
+	 * The version of the binary format written by this class.
+	 */
+	public static final short VERSION = 2;
+
+	/**
+	 * The class name of the color generator.
+	 */
+	private String generator;
+
+	/**
+	 * The class name of the GraphMap.
+	 */
+	private String graphMap;
+
+	/**
+	 * The distance in pixels between cells, or -1 if not given.
+	 */
+	private int distance;
+
+	/**
+	 * Whether the map creates food, or null if not given.
+	 */
+	private Boolean createFood;
+
+	/**
+	 * The rows of cells.
+	 */
+	private MapRows rows;
+
+	/**
+	 * True iff the contents were read from a binary file.
+	 */
+	private boolean binary = false;
+
+	/**
+	 * Creates the contents of a map file.
+	 * 
+	 * @param generator
+	 *            The class name of the color generator
+	 * @param graphMap
+	 *            The class name of the GraphMap
+	 * @param distance
+	 *            The distance in pixels between cells, or -1 if not given
+	 * @param createFood
+	 *            Whether the map creates food, or null if not given
+	 * @param rows
+	 *            The rows of cells
+	 */
+	public MapFile(String generator, String graphMap, int distance,
+			Boolean createFood, MapRows rows) {
+		this.generator = generator;
+		this.graphMap = graphMap;
+		this.distance = distance;
+		this.createFood = createFood;
+		this.rows = rows;
+	}
+
+	/**
+	 * Reads a map file of either kind.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @return The contents of the file
+	 * @throws IOException
+	 *             If the file cannot be read
+	 */
+	public static MapFile read(String location) throws IOException {
+		ByteBuffer buffer = mapFile(location);
+		if (buffer.remaining() >= 4 && buffer.getInt(0) == MAGIC) {
+			return readBinary(buffer);
+		}
+		return readText(buffer);
+	}
+
+	/**
+	 * Reads the contents of a text map file.
+	 * 
+	 * @param buffer
+	 *            The bytes of the file
+	 * @return The contents of the file
+	 */
+	private static MapFile readText(ByteBuffer buffer) {
+		String generator = readLine(buffer).trim();
+		String[] header = readLine(buffer).trim().split("\\s+");
+		int distance = -1;
+		Boolean createFood = null;
+		int next = 1;
+		if (next < header.length && isInt(header[next])) {
+			distance = Integer.parseInt(header[next++]);
+		}
+		if (next < header.length && isBoolean(header[next])) {
+			createFood = Boolean.valueOf(header[next]);
+		}
+		return new MapFile(generator, header[0], distance, createFood,
+				new MappedMapRows(buffer));
+	}
+
+	/**
+	 * Reads the contents of a binary map file.
+	 * 
+	 * @param buffer
+	 *            The bytes of the file
+	 * @return The contents of the file
+	 */
+	private static MapFile readBinary(ByteBuffer buffer) {
+		buffer.getInt();
+		short version = buffer.getShort();
+		if (version != VERSION) {
+			throw new RuntimeException("Unable to read version " + version
+					+ " of the binary map format.");
+		}
+		String generator = readString(buffer);
+		String graphMap = readString(buffer);
+		int distance = buffer.getInt();
+		byte food = buffer.get();
+		MapFile file = new MapFile(generator, graphMap, distance,
+				food < 0 ? null : Boolean.valueOf(food == 1),
+				new PackedMapRows(buffer));
+		file.binary = true;
+		return file;
+	}
+
+	/**
+	 * Writes these contents as a text map file.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void writeText(String location) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(location));
+		try {
+			out.write(generator);
+			out.newLine();
+			out.write(graphMap);
+			if (distance >= 0) {
+				out.write(" " + distance);
+			}
+			if (createFood != null) {
+				out.write(" " + createFood);
+			}
+			out.newLine();
+			char[] line = new char[0];
+			for (int y = 0; y < rows.getHeight(); y++) {
+				if (line.length < rows.getWidth(y)) {
+					line = new char[rows.getWidth(y)];
+				}
+				for (int x = 0; x < rows.getWidth(y); x++) {
+					line[x] = rows.getChar(x, y);
+				}
+				out.write(line, 0, rows.getWidth(y));
+				out.newLine();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes these contents as a binary map file.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void writeBinary(String location) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(location)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeUTF(generator);
+			out.writeUTF(graphMap);
+			out.writeInt(distance);
+			out.writeByte(createFood == null ? -1 : createFood ? 1 : 0);
+			PackedMapRows.write(rows, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Get the class name of the color generator.
+	 * 
+	 * @return The class name
+	 */
+	public String getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * Get the class name of the GraphMap.
+	 * 
+	 * @return The class name
+	 */
+	public String getGraphMap() {
+		return graphMap;
+	}
+
+	/**
+	 * Get the distance in pixels between cells.
+	 * 
+	 * @return The distance, or -1 if not given
+	 */
+	public int getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Get whether the map creates food.
+	 * 
+	 * @return Whether the map creates food, or null if not given
+	 */
+	public Boolean getCreateFood() {
+		return createFood;
+	}
+
+	/**
+	 * Get the rows of cells.
+	 * 
+	 * @return The rows
+	 */
+	public MapRows getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get whether these contents were read from a binary file.
+	 * 
+	 * @return true iff the file was binary
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * Maps a whole file into memory for reading.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @return The bytes of the file
+	 * @throws IOException
+	 *             If the file cannot be read, or is 2GB or larger
+	 */
+	private static ByteBuffer mapFile(String location) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(location, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Map files must be smaller than 2GB.");
+			}
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads a line of text, moving the buffer past it.
+	 * 
+	 * @param buffer
+	 *            The bytes of a file
+	 * @return The line without its line break
+	 */
+	private static String readLine(ByteBuffer buffer) {
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			char c = (char) (buffer.get() & 0xFF);
+			if (c == '\n') {
+				break;
+			}
+			if (c != '\r') {
+				line.append(c);
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Reads a string written by DataOutput.writeUTF().
+	 * 
+	 * @param buffer
+	 *            The bytes of a file
+	 * @return The string
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks if a word is a whole number.
+	 * 
+	 * @param word
+	 *            A word from a map file
+	 * @return true iff the word can be read as an int
+	 */
+	private static boolean isInt(String word) {
+		try {
+			Integer.parseInt(word);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if a word is true or false, ignoring case.
+	 * 
+	 * @param word
+	 *            A word from a map file
+	 * @return true iff the word can be read as a boolean
+	 */
+	private static boolean isBoolean(String word) {
+		return word.equalsIgnoreCase("true") || word.equalsIgnoreCase("false");
+	}
+}
@@ -0,0 +1,39 @@
+package graph;
+
+/**
+ * The rows of characters describing a map, one character per cell. Lets a
+ * GraphMap be filled straight from wherever the rows are kept, such as an
+ * array of strings or a file mapped into memory.
+ * 
+ * @author Brian Nakayama
+ * @see graph.GraphMap#initialize(MapRows)
+ */
+public interface MapRows {
+
+	/**
+	 * Get the number of rows.
+	 * 
+	 * @return The number of rows
+	 */
+	public int getHeight();
+
+	/**
+	 * Get the number of cells in a row.
+	 * 
+	 * @param y
+	 *            The row index
+	 * @return The number of characters in that row
+	 */
+	public int getWidth(int y);
+
+	/**
+	 * Get the character for the cell at index (x, y).
+	 * 
+	 * @param x
+	 *            The x index of a Cell
+	 * @param y
+	 *            The y index of a Cell
+	 * @return The character describing the cell
+	 */
+	public char getChar(int x, int y);
+}
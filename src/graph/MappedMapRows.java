@@ -0,0 +1,101 @@
+package graph;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The rows of a map file read straight from a buffer, usually a file mapped
+ * into memory. Each byte is one cell. Only the start and length of each row
+ * are kept, so the rows take no memory beyond the buffer itself.
+ * 
+ * @author Brian Nakayama
+ * @see graph.GraphMapFactory
+ */
+public class MappedMapRows implements MapRows {
+
+	/**
+	 * The bytes of the rows.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * The position in the buffer where each row starts.
+	 */
+	private int[] rowStart;
+
+	/**
+	 * The number of cells in each row.
+	 */
+	private int[] rowLength;
+
+	/**
+	 * Finds the rows from the buffer's position to its limit. Rows end with
+	 * "\n" or "\r\n", and blank lines after the last row are ignored.
+	 * 
+	 * @param buffer
+	 *            The bytes of the rows
+	 */
+	public MappedMapRows(ByteBuffer buffer) {
+		this.buffer = buffer;
+		int end = buffer.limit();
+		while (end > buffer.position()
+				&& Character.isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+		rowStart = new int[16];
+		rowLength = new int[16];
+		int height = 0;
+		int start = buffer.position();
+		int limit = buffer.limit();
+		while (start < end) {
+			int i = start;
+			while (i < limit && buffer.get(i) != '\n') {
+				i++;
+			}
+			int length = i - start;
+			if (length > 0 && buffer.get(i - 1) == '\r') {
+				length--;
+			}
+			if (height == rowStart.length) {
+				rowStart = Arrays.copyOf(rowStart, height * 2);
+				rowLength = Arrays.copyOf(rowLength, height * 2);
+			}
+			rowStart[height] = start;
+			rowLength[height] = length;
+			height++;
+			start = i + 1;
+		}
+		rowStart = Arrays.copyOf(rowStart, height);
+		rowLength = Arrays.copyOf(rowLength, height);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return rowStart.length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getWidth(int)
+	 */
+	@Override
+	public int getWidth(int y) {
+		return rowLength[y];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getChar(int, int)
+	 */
+	@Override
+	public char getChar(int x, int y) {
+		return (char) (buffer.get(rowStart[y] + x) & 0xFF);
+	}
+}
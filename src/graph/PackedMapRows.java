@@ -0,0 +1,179 @@
+package graph;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The rows of a binary map file. Each distinct character is given an index
+ * in a small palette, and the index of every cell is packed into 1, 2, 4 or
+ * 8 bits, row after row. The cells are read straight from the buffer, so a
+ * map file mapped into memory is never copied.
+ * 
+ * @author Brian Nakayama
+ * @see graph.MapFile
+ */
+public class PackedMapRows implements MapRows {
+
+	/**
+	 * The largest number of distinct characters a map can use.
+	 */
+	public static final int MAX_PALETTE = 256;
+
+	/**
+	 * The bytes of the packed cells.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * The position in the buffer of the first packed cell.
+	 */
+	private int cellStart;
+
+	/**
+	 * The index of the first cell of each row, followed by the number of
+	 * cells.
+	 */
+	private int[] rowStart;
+
+	/**
+	 * The character for each palette index.
+	 */
+	private char[] palette;
+
+	/**
+	 * The number of bits in each cell's palette index.
+	 */
+	private int bits;
+
+	/**
+	 * Reads the rows from a buffer written by write(), leaving the buffer
+	 * after the packed cells.
+	 * 
+	 * @param buffer
+	 *            The bytes of the rows
+	 */
+	public PackedMapRows(ByteBuffer buffer) {
+		this.buffer = buffer;
+		int height = buffer.getInt();
+		if (height < 0) {
+			throw new RuntimeException("The map has a negative height.");
+		}
+		rowStart = new int[height + 1];
+		for (int y = 0; y < height; y++) {
+			rowStart[y + 1] = rowStart[y] + buffer.getInt();
+		}
+		int size = buffer.getShort();
+		if (size < 0 || size > MAX_PALETTE) {
+			throw new RuntimeException("A map cannot use " + size
+					+ " different characters.");
+		}
+		palette = new char[size];
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = buffer.getChar();
+		}
+		bits = buffer.get();
+		if (bits != 1 && bits != 2 && bits != 4 && bits != 8) {
+			throw new RuntimeException("Cells cannot be packed into " + bits
+					+ " bits.");
+		}
+		cellStart = buffer.position();
+		long bytes = ((long) rowStart[height] * bits + 7) / 8;
+		if (bytes > buffer.remaining()) {
+			throw new RuntimeException("The map file is missing cells.");
+		}
+		buffer.position(cellStart + (int) bytes);
+	}
+
+	/**
+	 * Writes rows so that they can be read back by the constructor.
+	 * 
+	 * @param rows
+	 *            The rows to write
+	 * @param out
+	 *            Where to write them
+	 * @throws IOException
+	 *             If the rows cannot be written
+	 */
+	public static void write(MapRows rows, DataOutput out) throws IOException {
+		char[] palette = new char[MAX_PALETTE];
+		int size = 0;
+		int[] indices = new int[Character.MAX_VALUE + 1];
+		Arrays.fill(indices, -1);
+		out.writeInt(rows.getHeight());
+		for (int y = 0; y < rows.getHeight(); y++) {
+			out.writeInt(rows.getWidth(y));
+			for (int x = 0; x < rows.getWidth(y); x++) {
+				char c = rows.getChar(x, y);
+				if (indices[c] < 0) {
+					if (size == MAX_PALETTE) {
+						throw new RuntimeException("A map can only use "
+								+ MAX_PALETTE + " different characters.");
+					}
+					indices[c] = size;
+					palette[size++] = c;
+				}
+			}
+		}
+		out.writeShort(size);
+		for (int i = 0; i < size; i++) {
+			out.writeChar(palette[i]);
+		}
+		int bits = 1;
+		while (1 << bits < size) {
+			bits *= 2;
+		}
+		out.writeByte(bits);
+
+		int packed = 0;
+		int used = 0;
+		for (int y = 0; y < rows.getHeight(); y++) {
+			for (int x = 0; x < rows.getWidth(y); x++) {
+				packed = packed << bits | indices[rows.getChar(x, y)];
+				used += bits;
+				if (used == 8) {
+					out.writeByte(packed);
+					packed = 0;
+					used = 0;
+				}
+			}
+		}
+		if (used > 0) {
+			out.writeByte(packed << (8 - used));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return rowStart.length - 1;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getWidth(int)
+	 */
+	@Override
+	public int getWidth(int y) {
+		return rowStart[y + 1] - rowStart[y];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see graph.MapRows#getChar(int, int)
+	 */
+	@Override
+	public char getChar(int x, int y) {
+		long bit = (long) (rowStart[y] + x) * bits;
+		int packed = buffer.get(cellStart + (int) (bit >>> 3)) & 0xFF;
+		int shift = 8 - bits - (int) (bit & 7);
+		return palette[(packed >>> shift) & ((1 << bits) - 1)];
+	}
+}
@@ -0,0 +1,263 @@
+package graph;
+
+import java.util.Random;
+
+/**
+ * A stream of random numbers that can be split into independent streams, in
+ * the style of java.util.SplittableRandom. Every map splits its own stream
+ * from Config.RANDOM, and every tile splits its own stream from its map's, so
+ * each stream is only ever used by one thread at a time. Only splitting and
+ * seeding are synchronized, so that maps can be split from the shared root on
+ * any thread.
+ * <p>
+ * It is a java.util.Random, so it can be handed to code that expects one,
+ * such as a ColorGenerator. Every source of random bits is replaced, so
+ * drawing numbers takes no locks and has no atomic seed to fight over, and
+ * the numbers each part of a game sees do not depend on how threads
+ * interleave.
+ * <p>
+ * The state of a stream can be read and set, so that a game can be saved and
+ * carried on later exactly where it left off.
+ * 
+ * @author Brian Nakayama
+ * @see main.Config#RANDOM
+ * @see graph.Checkpoint
+ */
+public class RandomSource extends Random {
+
+	/**
+	 * The following variable exists because Random is serializable.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The odd gamma of a stream made from a seed: the golden ratio scaled to
+	 * 64 bits.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * The scale from 53 random bits to a double between 0 and 1.
+	 */
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	/**
+	 * The seed of the next stream made without a seed.
+	 */
+	private static long defaultSeed = mix64(System.currentTimeMillis())
+			^ mix64(System.nanoTime());
+
+	/**
+	 * The state, which moves by gamma for each number.
+	 */
+	private long seed;
+
+	/**
+	 * The step between states. Always odd.
+	 */
+	private long gamma;
+
+	/**
+	 * Create a stream that differs from every other stream made without a
+	 * seed.
+	 */
+	public RandomSource() {
+		this(nextDefaultSeed());
+	}
+
+	/**
+	 * Create a stream from a seed. Streams made from the same seed produce the
+	 * same numbers.
+	 * 
+	 * @param seed
+	 *            The seed
+	 */
+	public RandomSource(long seed) {
+		setSeed(seed);
+	}
+
+	/**
+	 * Create a stream from its state.
+	 * 
+	 * @param seed
+	 *            The state
+	 * @param gamma
+	 *            The step between states, which must be odd
+	 */
+	private RandomSource(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Get a seed for a stream made without one.
+	 * 
+	 * @return A seed
+	 */
+	private static synchronized long nextDefaultSeed() {
+		defaultSeed += 2 * GOLDEN_GAMMA;
+		return defaultSeed;
+	}
+
+	/**
+	 * Restart this stream from a seed, so that it produces the same numbers as
+	 * a new stream made from that seed.
+	 * 
+	 * @param seed
+	 *            The seed
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		this.seed = seed;
+		this.gamma = GOLDEN_GAMMA;
+	}
+
+	/**
+	 * Split a new stream from this one. The new stream is determined by the
+	 * state of this one, and its numbers are independent of this stream's.
+	 * Safe to call from several threads at once.
+	 * 
+	 * @return The new stream
+	 */
+	public synchronized RandomSource split() {
+		return new RandomSource(mix64(nextSeed()), mixGamma(nextSeed()));
+	}
+
+	/**
+	 * Get a random long.
+	 * 
+	 * @return Any long
+	 */
+	@Override
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * Get a random int between 0 (inclusive) and bound (exclusive).
+	 * 
+	 * @param bound
+	 *            The bound, which must be positive
+	 * @return An int from 0 to bound - 1
+	 */
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new RuntimeException("The bound must be positive.");
+		}
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			return r & m;
+		}
+		// Reject the last partial run of bound values, so each is as likely.
+		int u = r >>> 1;
+		while (u + m - (r = u % bound) < 0) {
+			u = mix32(nextSeed()) >>> 1;
+		}
+		return r;
+	}
+
+	/**
+	 * Get a random double between 0 (inclusive) and 1 (exclusive).
+	 * 
+	 * @return A double from 0 to 1
+	 */
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Random#next(int)
+	 */
+	@Override
+	protected int next(int bits) {
+		return mix32(nextSeed()) >>> (32 - bits);
+	}
+
+	/**
+	 * Get the state of this stream.
+	 * 
+	 * @return The state
+	 * @see #setState(long, long)
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Get the step between the states of this stream.
+	 * 
+	 * @return The step, which is odd
+	 * @see #setState(long, long)
+	 */
+	public long getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Set the state of this stream to one read from getSeed() and getGamma().
+	 * 
+	 * @param seed
+	 *            The state
+	 * @param gamma
+	 *            The step between states
+	 */
+	public synchronized void setState(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma | 1L;
+	}
+
+	/**
+	 * Move to the next state.
+	 * 
+	 * @return The new state
+	 */
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	/**
+	 * Scramble a state into 64 random bits (Stafford's variant 13).
+	 * 
+	 * @param z
+	 *            A state
+	 * @return The random bits
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Scramble a state into 32 random bits.
+	 * 
+	 * @param z
+	 *            A state
+	 * @return The random bits
+	 */
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/**
+	 * Scramble a state into the gamma of a new stream. The gamma is odd, and
+	 * has enough bit changes between neighboring bits to mix well.
+	 * 
+	 * @param z
+	 *            A state
+	 * @return An odd gamma
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,93 @@
+package graph;
+
+import java.util.Arrays;
+
+/**
+ * What a worker needs while it updates one tile: the tile's number generator,
+ * the log of its changes during a synchronous frame, and the cells it filled
+ * or emptied. The scheduler installs the context on the store for the
+ * worker's thread, and the store only looks for it while tiles are being
+ * updated, so updating on one thread never pays for it.
+ *
+ * @author Brian Nakayama
+ * @see graph.TileScheduler
+ * @see graph.CellStore#setTileContext(TileContext)
+ */
+class TileContext {
+
+	/**
+	 * The generator used by cells in the tile.
+	 */
+	private RandomSource random;
+
+	/**
+	 * Records the changes made in the tile during a synchronous frame.
+	 */
+	private ChangeLog log = new ChangeLog();
+
+	/**
+	 * The cells filled or emptied during the current phase.
+	 */
+	private int[] emptied = new int[16];
+
+	/**
+	 * The number of cells in emptied.
+	 */
+	private int emptiedCount = 0;
+
+	/**
+	 * Creates the context of a tile.
+	 *
+	 * @param random
+	 *            The generator used by cells in the tile
+	 */
+	TileContext(RandomSource random) {
+		this.random = random;
+	}
+
+	/**
+	 * Get the generator used by cells in the tile.
+	 *
+	 * @return The tile's generator
+	 */
+	RandomSource getRandom() {
+		return random;
+	}
+
+	/**
+	 * Get the log of the changes made in the tile during a synchronous frame.
+	 *
+	 * @return The tile's log
+	 */
+	ChangeLog getLog() {
+		return log;
+	}
+
+	/**
+	 * Remembers that a cell was filled or emptied, so the store's set of empty
+	 * cells can be updated after the phase.
+	 *
+	 * @param id
+	 *            The id of the cell
+	 */
+	void addEmptied(int id) {
+		if (emptied.length == emptiedCount) {
+			emptied = Arrays.copyOf(emptied, emptied.length * 2);
+		}
+		emptied[emptiedCount++] = id;
+	}
+
+	/**
+	 * Updates the store's set of empty cells with the cells filled or emptied
+	 * during the phase, in the order they changed, and forgets them.
+	 *
+	 * @param store
+	 *            The store holding the cells
+	 */
+	void applyEmptied(CellStore store) {
+		for (int i = 0; i < emptiedCount; i++) {
+			store.updateEmpty(emptied[i]);
+		}
+		emptiedCount = 0;
+	}
+}
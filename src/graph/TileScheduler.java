@@ -0,0 +1,341 @@
+package graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates the cells of a CellStore in parallel. The map is cut into square
+ * tiles, and the tiles are colored like a two by two checker board. Each
+ * color is updated as one phase on a ForkJoinPool. A state only changes its
+ * own cell and the cells next to it, so as long as a tile is at least two
+ * cells wide, no two tiles of the same color touch the same cell.
+ * <p>
+ * States may also share fields with states far away, such as a snake's tail
+ * and its head, which may be updated by tiles running at the same time. Such
+ * states must guard what they share with a lock, and their changes must not
+ * depend on which of them runs first.
+ * <p>
+ * Every tile has its own number generator split once from the map's
+ * generator, and cells within a tile are always updated in the same order, so
+ * the result of a frame does not depend on which worker ran which tile. Only
+ * the active cells of each tile are visited. For the same reason, the cells
+ * a tile fills or empties are only added to the store's set of empty cells
+ * after each phase, in tile order.
+ *
+ * @author Brian Nakayama
+ * @see graph.GraphMap#setTileSize(int)
+ * @see state.SnakeHead
+ */
+public class TileScheduler {
+
+	/**
+	 * The number of colors (and phases) used to schedule tiles.
+	 */
+	private static final int COLORS = 4;
+
+	/**
+	 * The smallest tile that keeps tiles of the same color apart.
+	 */
+	public static final int MIN_TILE_SIZE = 2;
+
+	/**
+	 * The store whose cells are updated.
+	 */
+	private CellStore store;
+
+	/**
+	 * The tiles of each color.
+	 */
+	private Tile[][] phases = new Tile[COLORS][];
+
+	/**
+	 * Every tile, by index.
+	 */
+	private Tile[] tiles;
+
+	/**
+	 * The workers that update tiles.
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * The index of the tile each cell belongs to.
+	 */
+	private int[] tileOf;
+
+	/**
+	 * The position in tileIds where each tile's cells begin, followed by the
+	 * number of active cells.
+	 */
+	private int[] tileStart;
+
+	/**
+	 * The active cells of the current frame, grouped by tile in id order.
+	 */
+	private int[] tileIds = new int[0];
+
+	/**
+	 * Cuts the cells of a store into tiles.
+	 *
+	 * @param store
+	 *            The store to update
+	 * @param tileSize
+	 *            The width and height of a tile in cells
+	 * @param seeds
+	 *            The generator each tile's number generator is split from
+	 * @param pool
+	 *            The workers that update tiles
+	 */
+	public TileScheduler(CellStore store, int tileSize, RandomSource seeds,
+			ForkJoinPool pool) {
+		if (tileSize < MIN_TILE_SIZE) {
+			throw new RuntimeException("Tiles must be at least "
+					+ MIN_TILE_SIZE + " cells wide.");
+		}
+		this.store = store;
+		this.pool = pool;
+
+		int width = 0;
+		for (int y = 0; y < store.getHeight(); y++) {
+			width = Math.max(width, store.getWidth(y));
+		}
+		int tilesX = (width + tileSize - 1) / tileSize;
+		int tilesY = (store.getHeight() + tileSize - 1) / tileSize;
+		tileOf = new int[store.size()];
+		for (int y = 0; y < store.getHeight(); y++) {
+			for (int x = 0; x < store.getWidth(y); x++) {
+				tileOf[store.getId(x, y)] = (y / tileSize) * tilesX + x
+						/ tileSize;
+			}
+		}
+		tileStart = new int[tilesX * tilesY + 1];
+
+		int[] counts = new int[COLORS];
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				counts[color(tx, ty)]++;
+			}
+		}
+		for (int c = 0; c < COLORS; c++) {
+			phases[c] = new Tile[counts[c]];
+			counts[c] = 0;
+		}
+		tiles = new Tile[tilesX * tilesY];
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				int c = color(tx, ty);
+				Tile tile = new Tile(ty * tilesX + tx, seeds.split());
+				tiles[tile.index] = tile;
+				phases[c][counts[c]++] = tile;
+			}
+		}
+	}
+
+	/**
+	 * Get the color of the tile at tile index (x, y).
+	 *
+	 * @param tx
+	 *            The x index of a tile
+	 * @param ty
+	 *            The y index of a tile
+	 * @return The color of the tile
+	 */
+	private static int color(int tx, int ty) {
+		return (tx % 2) + 2 * (ty % 2);
+	}
+
+	/**
+	 * Get the number of tiles.
+	 *
+	 * @return The number of tiles
+	 */
+	int getTileCount() {
+		return tiles.length;
+	}
+
+	/**
+	 * Get the number generator of a tile, so it can be saved and restored.
+	 *
+	 * @param index
+	 *            The index of a tile
+	 * @return The tile's generator
+	 * @see graph.Checkpoint
+	 */
+	RandomSource getRandom(int index) {
+		return tiles[index].context.getRandom();
+	}
+
+	/**
+	 * Updates every cell, one color of tiles at a time. The distance field is
+	 * held still during a phase and repaired between phases. Synchronous
+	 * frames only read the current generation, so every tile is updated in a
+	 * single phase and the changes are committed afterwards in tile order.
+	 */
+	public void update() {
+		groupActiveCells();
+		if (store.isSynchronous()) {
+			store.setRecording(true);
+			store.setTiled(true);
+			try {
+				pool.invoke(new TileTask(tiles, 0, tiles.length));
+			} finally {
+				store.setTiled(false);
+				store.setRecording(false);
+			}
+			ChangeLog[] logs = new ChangeLog[tiles.length];
+			for (int t = 0; t < tiles.length; t++) {
+				logs[t] = tiles[t].context.getLog();
+			}
+			store.commit(logs);
+			return;
+		}
+		DistanceField distances = store.getDistances();
+		distances.setFrozen(true);
+		store.setTiled(true);
+		try {
+			for (Tile[] phase : phases) {
+				pool.invoke(new TileTask(phase, 0, phase.length));
+				for (Tile tile : phase) {
+					tile.context.applyEmptied(store);
+				}
+				distances.repairChanges();
+			}
+		} finally {
+			store.setTiled(false);
+			distances.setFrozen(false);
+		}
+	}
+
+	/**
+	 * Starts a frame and sorts its active cells into their tiles, keeping
+	 * them in id order within each tile.
+	 */
+	private void groupActiveCells() {
+		int count = store.startFrame();
+		if (tileIds.length < count) {
+			tileIds = new int[Math.max(count, tileIds.length * 2)];
+		}
+		Arrays.fill(tileStart, 0);
+		for (int i = 0; i < count; i++) {
+			tileStart[tileOf[store.getFrameId(i)] + 1]++;
+		}
+		for (int t = 1; t < tileStart.length; t++) {
+			tileStart[t] += tileStart[t - 1];
+		}
+		for (int i = 0; i < count; i++) {
+			int id = store.getFrameId(i);
+			tileIds[tileStart[tileOf[id]]++] = id;
+		}
+		// Filling the tiles moved each start to the next tile's start.
+		for (int t = tileStart.length - 1; t > 0; t--) {
+			tileStart[t] = tileStart[t - 1];
+		}
+		tileStart[0] = 0;
+	}
+
+	/**
+	 * A square block of cells with its own number generator.
+	 */
+	private class Tile {
+
+		/**
+		 * The index of this tile.
+		 */
+		private int index;
+
+		/**
+		 * The generator, change log and emptied cells of this tile.
+		 */
+		private TileContext context;
+
+		/**
+		 * Creates a tile.
+		 *
+		 * @param index
+		 *            The index of this tile
+		 * @param random
+		 *            The generator used by cells in this tile
+		 */
+		private Tile(int index, RandomSource random) {
+			this.index = index;
+			this.context = new TileContext(random);
+		}
+
+		/**
+		 * Updates the active cells in this tile in id order.
+		 */
+		private void update() {
+			store.setTileContext(context);
+			try {
+				for (int i = tileStart[index]; i < tileStart[index + 1]; i++) {
+					store.update(tileIds[i]);
+				}
+			} finally {
+				store.setTileContext(null);
+			}
+		}
+	}
+
+	/**
+	 * Updates a range of tiles of one color, splitting the range between
+	 * workers.
+	 */
+	private class TileTask extends RecursiveAction {
+
+		/**
+		 * The following variable exists because RecursiveAction is
+		 * serializable.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The tiles of one color.
+		 */
+		private Tile[] tiles;
+
+		/**
+		 * The first tile to update.
+		 */
+		private int from;
+
+		/**
+		 * The index after the last tile to update.
+		 */
+		private int to;
+
+		/**
+		 * Creates a task for a range of tiles.
+		 *
+		 * @param tiles
+		 *            The tiles of one color
+		 * @param from
+		 *            The first tile to update
+		 * @param to
+		 *            The index after the last tile to update
+		 */
+		private TileTask(Tile[] tiles, int from, int to) {
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int i = from; i < to; i++) {
+					tiles[i].update();
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(tiles, from, mid), new TileTask(tiles,
+						mid, to));
+			}
+		}
+	}
+}
@@ -2,15 +2,13 @@ package main;
 
 import color.RandomGreenGenerator;
 import graph.HexagonMap;
+import graph.RandomSource;
 import java.awt.Color;
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-
-import javax.swing.JOptionPane;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import state.State;
+import state.StateRegistry;
 
 /**
  * Holds the default settings for instances in a snake game.
@@ -61,20 +59,17 @@ public class Config {
 	public static final int GRAPH_DISTANCE = 20;
 
 	/**
-	 * The default number generator for the entire game.
+	 * The root number generator for the entire game. Each map splits its own
+	 * generator from this one when it is created, so setting its seed before
+	 * creating a map makes the game play the same way every time.
 	 */
-	public static final Random RANDOM = new Random();
+	public static final RandomSource RANDOM = new RandomSource();
 	
 	/**
 	 * The default maximum distance for path finding to a mouse.
 	 */
 	public static final int MAX_MOUSE_DISTANCE = 20;
 			
-	/**
-	 * A map for all State classes found in the state package.
-	 */
-	public static final Map<Character, Class<State>> STATES = new HashMap<Character, Class<State>>();
-
 	static {
 		FOOD_COLORS = new Color[MAX_FOOD_TIMER];
 		for (int i = 0; i < FOOD_COLORS.length; i++) {
@@ -87,37 +82,42 @@ public class Config {
 			SNAKE_COLORS[i] = new Color(1.0f, 0.0f, 0.0f, (i + 1.0f)
 					/ SNAKE_COLORS.length);
 		}
+	}
 
-		File packag = new File("src/state");
-		for (File file : packag.listFiles()) {
-			String fileName = file.getName();
+	/**
+	 * Get a factory for each State class listed in
+	 * META-INF/services/state.State. The list is read from the class path the
+	 * first time this is called, so it works from a jar and costs nothing
+	 * until a map is loaded.
+	 * 
+	 * @return The factories for the states in map files
+	 * @see java.util.ServiceLoader
+	 */
+	public static StateRegistry getStates() {
+		return StatesHolder.STATES;
+	}
 
-			try {
+	/**
+	 * Holds the state factories, so they are only found when first used.
+	 */
+	private static class StatesHolder {
 
-				@SuppressWarnings("unchecked")
-				Class<State> clazz = (Class<State>) Class.forName("state."
-						+ fileName.substring(0, fileName.length() - 5));
-				State s;
-				s = clazz.newInstance();
+		/**
+		 * A factory for each State class listed as a service.
+		 */
+		private static final StateRegistry STATES = new StateRegistry();
 
-				STATES.put(s.toChar(), clazz);
-			} catch (ClassNotFoundException e) {
-				System.out.println("No class was found for the file "
-						+ fileName + ".");
-			} catch (InstantiationException | IllegalAccessException e) {
-				System.out.println("Unable to create instances for " + fileName
-						+ ".");
+		static {
+			try {
+				for (State state : ServiceLoader.load(State.class,
+						Config.class.getClassLoader())) {
+					STATES.register(state);
+				}
+			} catch (ServiceConfigurationError | RuntimeException e) {
+				System.out.println("Unable to load the states: "
+						+ e.getMessage());
 			}
-
 		}
-
-	}
-	
-	
-	public static void endGame(int score){
-		JOptionPane.showMessageDialog(null, "GAME OVER. Score: "
-				+ score);
-		System.exit(0);
 	}
 
 }
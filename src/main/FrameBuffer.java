@@ -0,0 +1,89 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands frame snapshots from the simulation to the renderer without locks.
+ * There are three snapshots: the back one the simulation writes, the front
+ * one the renderer draws, and a middle one that is swapped with either side.
+ * The simulation never waits for the renderer, and the renderer always gets
+ * the latest published snapshot, skipping any it was too slow to draw.
+ * 
+ * @author Brian Nakayama
+ * @see main.FramePublisher
+ */
+public class FrameBuffer {
+
+	/**
+	 * The flag marking the middle snapshot as not yet taken by the renderer.
+	 */
+	private static final int FRESH = 4;
+
+	/**
+	 * The mask for the index of a snapshot.
+	 */
+	private static final int INDEX = 3;
+
+	/**
+	 * The three snapshots.
+	 */
+	private final FrameSnapshot[] snapshots = { new FrameSnapshot(),
+			new FrameSnapshot(), new FrameSnapshot() };
+
+	/**
+	 * The index of the middle snapshot, flagged with FRESH if it was
+	 * published since the renderer last took it.
+	 */
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	/**
+	 * The index of the snapshot the simulation writes.
+	 */
+	private int back = 0;
+
+	/**
+	 * The index of the snapshot the renderer draws.
+	 */
+	private int front = 2;
+
+	/**
+	 * Get the snapshot the simulation should write next. Only called by the
+	 * simulation.
+	 * 
+	 * @return The back snapshot
+	 */
+	FrameSnapshot getBack() {
+		return snapshots[back];
+	}
+
+	/**
+	 * Get all three snapshots, so the simulation can tell each one what
+	 * changed.
+	 * 
+	 * @return The snapshots
+	 */
+	FrameSnapshot[] getSnapshots() {
+		return snapshots;
+	}
+
+	/**
+	 * Publishes the back snapshot, taking the middle one to write next. Only
+	 * called by the simulation.
+	 */
+	void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Get the latest published snapshot. Only called by the renderer. The
+	 * snapshot stays unchanged until the next call.
+	 * 
+	 * @return The latest snapshot, which may be the one returned last time
+	 */
+	public FrameSnapshot getLatest() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & INDEX;
+		}
+		return snapshots[front];
+	}
+}
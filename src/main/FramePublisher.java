@@ -0,0 +1,121 @@
+package main;
+
+import graph.CellStore;
+import graph.DistanceField;
+import graph.GraphMap;
+import clock.Updatable;
+
+/**
+ * Steps a GraphMap and publishes a snapshot of it after every tick, so the
+ * map can be drawn on another thread at its own rate.
+ * 
+ * @author Brian Nakayama
+ * @see main.FrameBuffer
+ */
+public class FramePublisher implements Updatable {
+
+	/**
+	 * The model to update.
+	 */
+	private GraphMap graphMap;
+
+	/**
+	 * Hands the snapshots to the renderer.
+	 */
+	private FrameBuffer buffer;
+
+	/**
+	 * True iff distances from the mouse are copied for debug mode.
+	 */
+	private boolean debug;
+
+	/**
+	 * The number of ticks published.
+	 */
+	private int tick = 0;
+
+	/**
+	 * Updates the map and records each tick, or null to update the map
+	 * without recording.
+	 */
+	private Recorder recorder;
+
+	/**
+	 * Create a publisher for a map.
+	 * 
+	 * @param graphMap
+	 *            The model to update
+	 * @param buffer
+	 *            Hands the snapshots to the renderer
+	 * @param debug
+	 *            If true, copies the mouseDistance of each Cell.
+	 */
+	public FramePublisher(GraphMap graphMap, FrameBuffer buffer, boolean debug) {
+		this.graphMap = graphMap;
+		this.buffer = buffer;
+		this.debug = debug;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see clock.Updatable#update()
+	 */
+	@Override
+	public void update() {
+		if (recorder != null) {
+			recorder.update();
+		} else {
+			graphMap.update();
+		}
+		publish();
+	}
+
+	/**
+	 * Record every tick from now on.
+	 * 
+	 * @param recorder
+	 *            Updates the map and records each tick, or null to stop
+	 *            recording
+	 */
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Publishes a snapshot of the map as it is now. Every snapshot is told
+	 * which cells changed: those whose states were set, the active cells,
+	 * whose colors may animate, and in debug mode the cells whose distances
+	 * from the mouse were written.
+	 */
+	public void publish() {
+		CellStore store = graphMap.getStore();
+		store.setTrackChanges(true);
+		DistanceField distances = store.getDistances();
+		if (debug) {
+			distances.setTrackUpdates(true);
+			distances.repairChanges();
+		}
+		FrameSnapshot[] snapshots = buffer.getSnapshots();
+		for (FrameSnapshot snapshot : snapshots) {
+			if (snapshot.getStore() != store) {
+				// It copies every cell when it is next written.
+				continue;
+			}
+			for (int i = 0; i < store.getChangedCount(); i++) {
+				snapshot.changed(store.getChangedId(i));
+			}
+			for (int i = 0; i < store.getFrameCount(); i++) {
+				snapshot.changed(store.getFrameId(i));
+			}
+			for (int i = 0; i < distances.getUpdatedCount(); i++) {
+				snapshot.changed(distances.getUpdatedId(i));
+			}
+		}
+		store.clearChanges();
+		distances.clearUpdates();
+		tick++;
+		buffer.getBack().write(graphMap, tick, debug);
+		buffer.publish();
+	}
+}
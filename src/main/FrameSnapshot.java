@@ -0,0 +1,290 @@
+package main;
+
+import graph.CellSet;
+import graph.CellStore;
+import graph.GraphMap;
+
+import state.State;
+
+/**
+ * A copy of what a GraphMap looks like after one tick: the passability code
+ * and state color of every cell. A snapshot is only written by the
+ * simulation while it is the back buffer of a FrameBuffer, and only read by
+ * the renderer once it has been published, so it never changes while it is
+ * drawn.
+ * <p>
+ * Snapshots are written incrementally. Each one remembers the cells that
+ * changed since it was last written, copies only those, and hands them to
+ * the renderer as the cells to check. When distances are copied, the cells
+ * whose distances changed are remembered the same way.
+ * 
+ * @author Brian Nakayama
+ * @see main.FrameBuffer
+ * @see main.FramePublisher
+ */
+public class FrameSnapshot {
+
+	/**
+	 * The tick this snapshot shows, or 0 before it is first written.
+	 */
+	private int tick = 0;
+
+	/**
+	 * The tick this snapshot showed before it was last written, or -1 if
+	 * every cell may have changed.
+	 */
+	private int baseTick = -1;
+
+	/**
+	 * The store whose cells are copied.
+	 */
+	private CellStore store;
+
+	/**
+	 * The geometry version of the map when this snapshot was written.
+	 */
+	private int geometryVersion;
+
+	/**
+	 * The width of the map in pixels.
+	 */
+	private int pixelWidth;
+
+	/**
+	 * The height of the map in pixels.
+	 */
+	private int pixelHeight;
+
+	/**
+	 * The largest distance a cell can have from the mouse.
+	 */
+	private int maxDistance;
+
+	/**
+	 * The passability code of each cell.
+	 */
+	private byte[] codes = new byte[0];
+
+	/**
+	 * The color of each cell's state, or 0 for no state.
+	 */
+	private int[] colors = new int[0];
+
+	/**
+	 * The inverted distance of each cell from the mouse, or null unless
+	 * distances are copied.
+	 */
+	private int[] distances;
+
+	/**
+	 * The cells that changed between baseTick and tick.
+	 */
+	private int[] changedIds = new int[0];
+
+	/**
+	 * The number of cells that changed between baseTick and tick.
+	 */
+	private int changedCount = 0;
+
+	/**
+	 * The cells that changed since this snapshot was last written. Only used
+	 * by the simulation.
+	 */
+	private CellSet pending;
+
+	/**
+	 * Remembers that a cell, or its distance from the mouse, changed since
+	 * this snapshot was last written.
+	 * Called by the simulation even while the snapshot is being drawn, which
+	 * is safe because the renderer never reads the pending cells.
+	 * 
+	 * @param id
+	 *            A cell id
+	 */
+	void changed(int id) {
+		if (pending != null) {
+			pending.add(id);
+		}
+	}
+
+	/**
+	 * Copies the cells of a map that changed since this snapshot was last
+	 * written, or every cell if the map was initialized again or distances
+	 * were started or stopped being copied.
+	 * 
+	 * @param graphMap
+	 *            The map to copy
+	 * @param tick
+	 *            The tick being copied
+	 * @param copyDistances
+	 *            True iff distances from the mouse should be copied too
+	 */
+	void write(GraphMap graphMap, int tick, boolean copyDistances) {
+		CellStore current = graphMap.getStore();
+		if (current != store || copyDistances != (distances != null)) {
+			store = current;
+			codes = new byte[store.size()];
+			colors = new int[store.size()];
+			distances = copyDistances ? new int[store.size()] : null;
+			changedIds = new int[store.size()];
+			pending = new CellSet(store.size());
+			for (int id = 0; id < store.size(); id++) {
+				copy(id);
+			}
+			changedCount = 0;
+			baseTick = -1;
+		} else {
+			changedCount = pending.size();
+			for (int i = 0; i < changedCount; i++) {
+				int id = pending.get(i);
+				copy(id);
+				changedIds[i] = id;
+			}
+			baseTick = this.tick;
+		}
+		pending.clear();
+		geometryVersion = graphMap.getGeometryVersion();
+		pixelWidth = graphMap.getPixelWidth();
+		pixelHeight = graphMap.getPixelHeight();
+		maxDistance = store.getDistances().getMaxDistance();
+		this.tick = tick;
+	}
+
+	/**
+	 * Copies one cell from the store, with its distance if distances are
+	 * copied.
+	 * 
+	 * @param id
+	 *            A cell id
+	 */
+	private void copy(int id) {
+		State state = store.getState(id);
+		codes[id] = store.getCode(id);
+		colors[id] = state == null ? 0 : state.getColor().getRGB();
+		if (distances != null) {
+			distances[id] = store.getDistances().get(id);
+		}
+	}
+
+	/**
+	 * Get the tick this snapshot shows.
+	 * 
+	 * @return The tick, or 0 before the snapshot is first written
+	 */
+	public int getTick() {
+		return tick;
+	}
+
+	/**
+	 * Get the tick this snapshot showed before it was last written. Every
+	 * change after it is in the changed cells.
+	 * 
+	 * @return The tick, or -1 if every cell may have changed
+	 */
+	public int getBaseTick() {
+		return baseTick;
+	}
+
+	/**
+	 * Get the store whose cells were copied. Only its geometry and
+	 * background colors, which never change, should be read while drawing.
+	 * 
+	 * @return The store
+	 */
+	public CellStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Get the geometry version of the map when this snapshot was written.
+	 * 
+	 * @return The version of the geometry
+	 * @see graph.GraphMap#getGeometryVersion()
+	 */
+	public int getGeometryVersion() {
+		return geometryVersion;
+	}
+
+	/**
+	 * Get the width of the map in pixels.
+	 * 
+	 * @return The width
+	 */
+	public int getPixelWidth() {
+		return pixelWidth;
+	}
+
+	/**
+	 * Get the height of the map in pixels.
+	 * 
+	 * @return The height
+	 */
+	public int getPixelHeight() {
+		return pixelHeight;
+	}
+
+	/**
+	 * Get the passability code of a cell.
+	 * 
+	 * @param id
+	 *            A cell id
+	 * @return The code
+	 * @see graph.CellStore#getCode(int)
+	 */
+	public byte getCode(int id) {
+		return codes[id];
+	}
+
+	/**
+	 * Get the color of a cell's state.
+	 * 
+	 * @param id
+	 *            A cell id
+	 * @return The color as ARGB, or 0 if the cell has no state
+	 */
+	public int getColor(int id) {
+		return colors[id];
+	}
+
+	/**
+	 * Get the largest distance a cell can have from the mouse.
+	 * 
+	 * @return The maximum distance
+	 * @see graph.DistanceField#getMaxDistance()
+	 */
+	public int getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * Get the inverted distance of a cell from the mouse.
+	 * 
+	 * @param id
+	 *            A cell id
+	 * @return The distance, or 0 if distances were not copied
+	 */
+	public int getDistance(int id) {
+		return distances == null ? 0 : distances[id];
+	}
+
+	/**
+	 * Get the number of cells that changed between the base tick and the
+	 * tick.
+	 * 
+	 * @return The number of changed cells
+	 */
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	/**
+	 * Get a cell that changed between the base tick and the tick.
+	 * 
+	 * @param index
+	 *            A position between 0 and the number of changed cells
+	 * @return The id of a changed cell
+	 */
+	public int getChangedId(int index) {
+		return changedIds[index];
+	}
+}
@@ -0,0 +1,207 @@
+package main;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws numbers by copying images of them instead of laying out text. Each
+ * number is drawn into its own image the first time it is needed, so drawing
+ * the distances of a whole map allocates nothing. The font is shrunk until
+ * the widest number fits inside every cell, so a number never has to be
+ * clipped to its cell.
+ * 
+ * @author Brian Nakayama
+ * @see main.Renderer
+ */
+public class GlyphCache {
+
+	/**
+	 * The space in pixels kept between a number and the edge of its cell.
+	 */
+	private static final int MARGIN = 1;
+
+	/**
+	 * The smallest font size numbers are shrunk to.
+	 */
+	private static final int MIN_SIZE = 1;
+
+	/**
+	 * The font of the graphics the images were fitted for, or null before the
+	 * first number.
+	 */
+	private Font base;
+
+	/**
+	 * The font the images were drawn with.
+	 */
+	private Font font;
+
+	/**
+	 * The shapes of the cells, centered on the origin, that numbers must fit
+	 * inside.
+	 */
+	private Polygon[] cells;
+
+	/**
+	 * The number of digits of the widest number expected.
+	 */
+	private int digits;
+
+	/**
+	 * Half the width of the widest number expected, used to center numbers
+	 * the same way whatever their width.
+	 */
+	private int xOffset;
+
+	/**
+	 * The distance from the top of the font to its baseline. Digits do not
+	 * reach below the baseline, so this is the height of each image.
+	 */
+	private int ascent;
+
+	/**
+	 * The image of each number, or null if it has not been drawn yet.
+	 */
+	private BufferedImage[] glyphs = new BufferedImage[0];
+
+	/**
+	 * Gets ready to draw numbers up to a maximum inside cells of the given
+	 * shapes. If the font of the graphics, the number of digits of the
+	 * maximum or the shapes changed, the largest font no bigger than the
+	 * graphics' font whose numbers fit inside every shape is found, and every
+	 * image is drawn again.
+	 * 
+	 * @param g2D
+	 *            The graphics that will be drawn on
+	 * @param max
+	 *            The widest number expected
+	 * @param cells
+	 *            The shapes of the cells, centered on the origin, some of
+	 *            which may be null
+	 * @return True iff numbers are now drawn with a different font
+	 */
+	public boolean prepare(Graphics2D g2D, int max, Polygon[] cells) {
+		Font current = g2D.getFont();
+		int count = Integer.toString(max).length();
+		boolean refit = !current.equals(base) || cells != this.cells
+				|| count != digits;
+		if (!refit && glyphs.length > max) {
+			return false;
+		}
+		Font old = font;
+		if (refit) {
+			base = current;
+			this.cells = cells;
+			digits = count;
+			fit(g2D);
+			Arrays.fill(glyphs, null);
+		}
+		if (glyphs.length <= max) {
+			glyphs = Arrays.copyOf(glyphs, max + 1);
+		}
+		for (int i = 0; i <= max; i++) {
+			getGlyph(g2D, i);
+		}
+		return !font.equals(old);
+	}
+
+	/**
+	 * Finds the largest font no bigger than the base font whose widest number
+	 * fits inside every cell, and remembers its size.
+	 * 
+	 * @param g2D
+	 *            The graphics that will be drawn on
+	 */
+	private void fit(Graphics2D g2D) {
+		for (int size = Math.max((int) base.getSize2D(), MIN_SIZE); size >= MIN_SIZE; size--) {
+			font = base.deriveFont((float) size);
+			FontMetrics metrics = g2D.getFontMetrics(font);
+			int width = 0;
+			for (char c = '0'; c <= '9'; c++) {
+				width = Math.max(width, metrics.charWidth(c));
+			}
+			width *= digits;
+			xOffset = width / 2;
+			ascent = metrics.getAscent();
+			if (fits(-xOffset, -ascent / 2, width, ascent)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get whether a box, grown by MARGIN, lies inside every cell.
+	 * 
+	 * @param x
+	 *            The left of the box relative to a cell's center
+	 * @param y
+	 *            The top of the box relative to a cell's center
+	 * @param width
+	 *            The width of the box
+	 * @param height
+	 *            The height of the box
+	 * @return True iff the box fits inside every cell
+	 */
+	private boolean fits(int x, int y, int width, int height) {
+		for (Polygon cell : cells) {
+			if (cell != null
+					&& !cell.contains(x - MARGIN, y - MARGIN, width + 2
+							* MARGIN, height + 2 * MARGIN)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Draws a number in black centered on a point.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 * @param number
+	 *            A number that is not negative
+	 * @param x
+	 *            The x coordinate of the center
+	 * @param y
+	 *            The y coordinate of the center
+	 */
+	public void draw(Graphics2D g2D, int number, int x, int y) {
+		g2D.drawImage(getGlyph(g2D, number), x - xOffset, y - ascent / 2,
+				null);
+	}
+
+	/**
+	 * Get the image of a number, drawing it if needed.
+	 * 
+	 * @param g2D
+	 *            The graphics that will be drawn on
+	 * @param number
+	 *            A number that is not negative
+	 * @return The image of the number
+	 */
+	private BufferedImage getGlyph(Graphics2D g2D, int number) {
+		if (number >= glyphs.length) {
+			glyphs = Arrays.copyOf(glyphs, Math.max(number + 1,
+					glyphs.length * 2));
+		}
+		if (glyphs[number] == null) {
+			String text = "" + number;
+			FontMetrics metrics = g2D.getFontMetrics(font);
+			BufferedImage glyph = new BufferedImage(Math.max(1,
+					metrics.stringWidth(text)), Math.max(1, ascent),
+					BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = glyph.createGraphics();
+			g.setFont(font);
+			g.setColor(Color.BLACK);
+			g.drawString(text, 0, ascent);
+			g.dispose();
+			glyphs[number] = glyph;
+		}
+		return glyphs[number];
+	}
+}
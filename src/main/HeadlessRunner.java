@@ -0,0 +1,178 @@
+package main;
+
+import graph.GraphMap;
+import graph.GraphMapFactory;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Runs a snake game without a window, as fast as the map can update. The
+ * mouse is moved by a TargetProvider, and the game ending is reported instead
+ * of exiting the program. Swing is never loaded.
+ * 
+ * <pre>
+ * For example: java main.HeadlessRunner Arena.txt 10000 Arena.replay
+ * </pre>
+ * 
+ * @author Brian Nakayama
+ * @see main.TargetProvider
+ */
+public class HeadlessRunner {
+
+	/**
+	 * The number of ticks between targets when run from the command line.
+	 */
+	public static final int WANDER_TICKS = 20;
+
+	/**
+	 * The model to update.
+	 */
+	private GraphMap graphMap;
+
+	/**
+	 * Moves the mouse on each tick.
+	 */
+	private TargetProvider targets;
+
+	/**
+	 * The number of ticks run so far.
+	 */
+	private int ticks = 0;
+
+	/**
+	 * Updates the map and records each tick, or null to update the map
+	 * without recording.
+	 */
+	private Recorder recorder;
+
+	/**
+	 * Create a runner for a map.
+	 * 
+	 * @param graphMap
+	 *            The model to update
+	 * @param targets
+	 *            Moves the mouse on each tick
+	 */
+	public HeadlessRunner(GraphMap graphMap, TargetProvider targets) {
+		this.graphMap = graphMap;
+		this.targets = targets;
+	}
+
+	/**
+	 * Updates the map until it has run for the given number of ticks or the
+	 * game is over.
+	 * 
+	 * @param maxTicks
+	 *            The most ticks to run
+	 * @return The number of ticks run by this call
+	 */
+	public int run(int maxTicks) {
+		int start = ticks;
+		while (ticks - start < maxTicks && !graphMap.isGameOver()) {
+			Point target = targets.getTarget(ticks);
+			if (target != null) {
+				graphMap.updateMouse(target.x, target.y);
+			}
+			if (recorder != null) {
+				recorder.update();
+			} else {
+				graphMap.update();
+			}
+			ticks++;
+		}
+		return ticks - start;
+	}
+
+	/**
+	 * Record every tick from now on.
+	 * 
+	 * @param recorder
+	 *            Updates the map and records each tick, or null to stop
+	 *            recording
+	 */
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Get the number of ticks run so far.
+	 * 
+	 * @return The number of ticks
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Get whether the game is over.
+	 * 
+	 * @return True iff the game is over
+	 */
+	public boolean isGameOver() {
+		return graphMap.isGameOver();
+	}
+
+	/**
+	 * Get the score the game ended with.
+	 * 
+	 * @return The final score, or 0 if the game is not over
+	 */
+	public int getScore() {
+		return graphMap.getScore();
+	}
+
+	/**
+	 * Runs a map file for a number of ticks with the mouse wandering to a new
+	 * random position every WANDER_TICKS ticks, and prints the result. If a
+	 * replay file is given, the game is recorded to it. The mouse wanders with
+	 * its own number generator, so that a replay draws the same numbers from
+	 * Config.RANDOM without it.
+	 * 
+	 * @param args
+	 *            The map file, the number of ticks, and an optional replay
+	 *            file
+	 * @throws IOException
+	 *             If the replay cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		String location = args.length > 0 ? args[0] : "Default.txt";
+		int maxTicks = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		String replay = args.length > 2 ? args[2] : null;
+
+		long seed = System.nanoTime();
+		Config.RANDOM.setSeed(seed);
+		final GraphMap map = new GraphMapFactory(location).createGraphMap();
+		final Random random = new Random();
+		HeadlessRunner runner = new HeadlessRunner(map, new TargetProvider() {
+			@Override
+			public Point getTarget(int tick) {
+				if (tick % WANDER_TICKS != 0) {
+					return null;
+				}
+				return new Point(random.nextInt(map.getPixelWidth()),
+						random.nextInt(map.getPixelHeight()));
+			}
+		});
+
+		Recorder recorder = null;
+		if (replay != null) {
+			recorder = new Recorder(map, location, seed);
+			runner.setRecorder(recorder);
+		}
+
+		long start = System.nanoTime();
+		runner.run(maxTicks);
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println("Ticks: " + runner.getTicks() + " in " + millis
+				+ " ms");
+		if (runner.isGameOver()) {
+			System.out.println("GAME OVER. Score: " + runner.getScore());
+		}
+		if (recorder != null) {
+			recorder.write(replay);
+		}
+	}
+}
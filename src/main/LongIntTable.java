@@ -0,0 +1,147 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * A table from long keys to int values, kept in arrays so that looking up a
+ * key allocates nothing. Keys are placed by open addressing with linear
+ * probing in a table twice as large as the most entries it holds. Instead of
+ * growing, the table is emptied when a new key would not fit, so a cache
+ * built on it forgets everything at once and never holds more than its limit.
+ *
+ * @author Brian Nakayama
+ * @see main.SpriteCache
+ * @see main.Renderer
+ */
+public class LongIntTable {
+
+	/**
+	 * The key in each slot.
+	 */
+	private long[] keys;
+
+	/**
+	 * The value in each slot.
+	 */
+	private int[] values;
+
+	/**
+	 * Whether each slot holds a key.
+	 */
+	private boolean[] used;
+
+	/**
+	 * The number of keys in the table.
+	 */
+	private int size = 0;
+
+	/**
+	 * The most keys the table holds.
+	 */
+	private int maxSize;
+
+	/**
+	 * The number of bits of a hash used to pick a slot.
+	 */
+	private int bits;
+
+	/**
+	 * Creates an empty table.
+	 *
+	 * @param maxSize
+	 *            The most keys the table holds before it is emptied
+	 */
+	public LongIntTable(int maxSize) {
+		this.maxSize = Math.max(1, maxSize);
+		int capacity = Integer.highestOneBit(this.maxSize * 2 - 1) << 1;
+		bits = Integer.numberOfTrailingZeros(capacity);
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new boolean[capacity];
+	}
+
+	/**
+	 * Get the slot of a key.
+	 *
+	 * @param key
+	 *            A key
+	 * @return The slot holding the key, or -1 if it is not in the table
+	 */
+	public int indexOf(long key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the value in a slot.
+	 *
+	 * @param index
+	 *            A slot returned by indexOf
+	 * @return The value of the slot's key
+	 */
+	public int valueAt(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Sets the value of a key, emptying the table first if it is full and the
+	 * key is new.
+	 *
+	 * @param key
+	 *            A key
+	 * @param value
+	 *            Its value
+	 */
+	public void put(long key, int value) {
+		int index = indexOf(key);
+		if (index < 0) {
+			if (size >= maxSize) {
+				clear();
+			}
+			int mask = keys.length - 1;
+			index = slot(key);
+			while (used[index]) {
+				index = (index + 1) & mask;
+			}
+			keys[index] = key;
+			used[index] = true;
+			size++;
+		}
+		values[index] = value;
+	}
+
+	/**
+	 * Get the number of keys in the table.
+	 *
+	 * @return The number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every key.
+	 */
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(used, false);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Get the first slot to look for a key in.
+	 *
+	 * @param key
+	 *            A key
+	 * @return A slot
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+	}
+}
@@ -3,8 +3,10 @@ package main;
 
 
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import clock.Clock;
 
@@ -12,10 +14,12 @@ import graph.GraphMap;
 import graph.GraphMapFactory;
 
 /**
- * Loads and starts a custom snake game. One can use the "-d" option for debug mode.
+ * Loads and starts a custom snake game. One can use the "-d" option for debug mode,
+ * and "-r" followed by a file to record the game to that file when it ends.
  * <pre>
  * 
  * For example: h4/>java Main -d Arena.txt
+ * Or:          h4/>java Main -r Arena.replay Arena.txt
  * 
  * The contents of Arena.txt:
  * 
@@ -47,27 +51,50 @@ import graph.GraphMapFactory;
 public class Main {
 
 	public static void main(String[] args) {
-		GraphMap map;
-		Set<String> argSet = new HashSet<String>();
-		for (String s: args){
-			argSet.add(s);
-		}
-		boolean debug = argSet.remove("-d");
-		
-		if (argSet.size() > 0){
-			map = new GraphMapFactory(argSet.iterator().next()).createGraphMap();
-		} else {
-			map = new GraphMapFactory("Default.txt").createGraphMap();
+		List<String> argList = new ArrayList<String>(Arrays.asList(args));
+		boolean debug = argList.remove("-d");
+		String replay = null;
+		int record = argList.indexOf("-r");
+		if (record >= 0 && record + 1 < argList.size()) {
+			replay = argList.remove(record + 1);
+			argList.remove(record);
 		}
+		String location = argList.size() > 0 ? argList.get(0) : "Default.txt";
+
+		long seed = System.nanoTime();
+		Config.RANDOM.setSeed(seed);
+		GraphMap map = new GraphMapFactory(location).createGraphMap();
 			
+		FrameBuffer buffer = new FrameBuffer();
+		FramePublisher publisher = new FramePublisher(map, buffer, debug);
+		if (replay != null) {
+			final Recorder recorder = new Recorder(map, location, seed);
+			final String replayLocation = replay;
+			publisher.setRecorder(recorder);
+			// The game ends by exiting, so save the recording on the way out.
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					try {
+						recorder.write(replayLocation);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
 		View gui = new View(map.getPixelWidth(),
-				map.getPixelHeight(), map, debug);
+				map.getPixelHeight(), map, debug, buffer);
 		try {
 			Thread.sleep(50);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-		Clock clock = new Clock(20.0f, gui);
+		Clock clock = new Clock(20.0f, publisher);
+		clock.setFixedStep(true);
 		clock.init();
+		Clock display = new Clock(60.0f, gui);
+		display.setFixedStep(true);
+		display.init();
 	}
 }
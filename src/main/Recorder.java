@@ -0,0 +1,99 @@
+package main;
+
+import graph.GraphMap;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import clock.Updatable;
+
+/**
+ * Updates a GraphMap and records the cell the snakes moved toward on every
+ * tick, so the game can be saved as a Replay. The seed of Config.RANDOM must
+ * be set to the recorded seed before the map is created.
+ * 
+ * @author Brian Nakayama
+ * @see main.Replay
+ */
+public class Recorder implements Updatable {
+
+	/**
+	 * The model to update.
+	 */
+	private GraphMap graphMap;
+
+	/**
+	 * The location of the map file the game is played on.
+	 */
+	private String mapLocation;
+
+	/**
+	 * The seed of Config.RANDOM before the map was created.
+	 */
+	private long seed;
+
+	/**
+	 * The id of the cell the snakes moved toward on each tick so far.
+	 */
+	private int[] targets = new int[1024];
+
+	/**
+	 * The number of ticks recorded.
+	 */
+	private int ticks = 0;
+
+	/**
+	 * Create a recorder for a map.
+	 * 
+	 * @param graphMap
+	 *            The model to update
+	 * @param mapLocation
+	 *            The location of the map file the game is played on
+	 * @param seed
+	 *            The seed of Config.RANDOM before the map was created
+	 */
+	public Recorder(GraphMap graphMap, String mapLocation, long seed) {
+		this.graphMap = graphMap;
+		this.mapLocation = mapLocation;
+		this.seed = seed;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see clock.Updatable#update()
+	 */
+	@Override
+	public synchronized void update() {
+		if (graphMap.isGameOver()) {
+			return;
+		}
+		graphMap.update();
+		if (ticks == targets.length) {
+			targets = Arrays.copyOf(targets, ticks * 2);
+		}
+		targets[ticks++] = graphMap.getTarget().getId();
+	}
+
+	/**
+	 * Get the game recorded so far, ending with the game as it is now.
+	 * 
+	 * @return The replay
+	 */
+	public synchronized Replay getReplay() {
+		return new Replay(mapLocation, seed, Arrays.copyOf(targets, ticks),
+				graphMap.getStore().hashState());
+	}
+
+	/**
+	 * Writes the game recorded so far to a file.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void write(String location) throws IOException {
+		getReplay().write(location);
+	}
+}
@@ -0,0 +1,576 @@
+package main;
+
+import graph.CellStore;
+import graph.DistanceField;
+import graph.GraphMap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+import state.State;
+
+/**
+ * Draws the cells of a GraphMap onto any graphics context, so the same
+ * drawing can be used by a window or an off screen image. A renderer either
+ * reads the map directly, on the thread that updates it, or draws the
+ * snapshots the map publishes, on a thread of its own.
+ * <p>
+ * The renderer remembers the color it last drew for each cell's state, and in
+ * debug mode the distance it drew. When only the changes are rendered, the
+ * cells that may have changed are checked against them, and only the cells
+ * that look different are redrawn. Cells are copied from a SpriteCache rather
+ * than filled.
+ * 
+ * @author Brian Nakayama
+ * @see main.View
+ * @see main.FrameSnapshot
+ */
+public class Renderer {
+
+	/**
+	 * The model to draw.
+	 */
+	private GraphMap graphMap;
+
+	/**
+	 * Toggles on and off the display of the mouseDistance for cells.
+	 */
+	private boolean debug;
+
+	/**
+	 * The color drawn for a cell without a state.
+	 */
+	private static final long NO_STATE = 0;
+
+	/**
+	 * The flag marking a drawn color as a state's color.
+	 */
+	private static final long HAS_STATE = 1l << 32;
+
+	/**
+	 * The store whose cells were drawn last, or null to draw everything.
+	 */
+	private CellStore drawnStore;
+
+	/**
+	 * The tick of the snapshot drawn last.
+	 */
+	private int drawnTick = 0;
+
+	/**
+	 * The state color last drawn for each cell, flagged with HAS_STATE, or
+	 * NO_STATE.
+	 */
+	private long[] drawnColors = new long[0];
+
+	/**
+	 * The distance last drawn for each cell in debug mode.
+	 */
+	private int[] drawnDistances = new int[0];
+
+	/**
+	 * Holds a sprite for each shape and color drawn.
+	 */
+	private SpriteCache sprites = new SpriteCache();
+
+	/**
+	 * The store whose shapes were found.
+	 */
+	private CellStore shapeStore;
+
+	/**
+	 * The geometry version of the map when the shapes were found.
+	 */
+	private int drawnGeometry;
+
+	/**
+	 * The index of each cell's shape in the sprite cache.
+	 */
+	private int[] shapes;
+
+	/**
+	 * The x position of each cell's polygon bounds.
+	 */
+	private int[] originX;
+
+	/**
+	 * The y position of each cell's polygon bounds.
+	 */
+	private int[] originY;
+
+	/**
+	 * The width of each cell's polygon.
+	 */
+	private int[] widths;
+
+	/**
+	 * The height of each cell's polygon.
+	 */
+	private int[] heights;
+
+	/**
+	 * The x coordinate of the center of each cell's polygon.
+	 */
+	private int[] centerX;
+
+	/**
+	 * The y coordinate of the center of each cell's polygon.
+	 */
+	private int[] centerY;
+
+	/**
+	 * The polygon of each shape, centered on the origin, or null for shape
+	 * indices not used. Distances are sized to fit inside all of them.
+	 */
+	private Polygon[] glyphCells;
+
+	/**
+	 * Holds an image of each distance drawn in debug mode.
+	 */
+	private GlyphCache glyphs = new GlyphCache();
+
+	/**
+	 * The most blended colors kept before they are all forgotten.
+	 */
+	public static final int MAX_BLENDS = 4096;
+
+	/**
+	 * The blended colors of states over backgrounds, keyed by both colors.
+	 */
+	private LongIntTable blends = new LongIntTable(MAX_BLENDS);
+
+	/**
+	 * Create a renderer for a map.
+	 * 
+	 * @param graphMap
+	 *            The model to draw
+	 * @param debug
+	 *            If true, draws the mouseDistance for each Cell.
+	 */
+	public Renderer(GraphMap graphMap, boolean debug) {
+		this.graphMap = graphMap;
+		this.debug = debug;
+	}
+
+	/**
+	 * Draws every cell of the map, and its state if it has one.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 */
+	public void render(Graphics2D g2D) {
+		CellStore store = graphMap.getStore();
+		drawAll(g2D, store, null, graphMap.getGeometryVersion());
+		store.setTrackChanges(true);
+		store.clearChanges();
+		if (debug) {
+			store.getDistances().setTrackUpdates(true);
+			store.getDistances().clearUpdates();
+		}
+	}
+
+	/**
+	 * Draws only the cells that look different since the last time they were
+	 * drawn. The cells checked are those whose states were set, the active
+	 * cells, whose colors may animate, and in debug mode the cells whose
+	 * distances were written. Everything is drawn the first time, after the
+	 * map is initialized again, and after invalidate().
+	 * 
+	 * @param g2D
+	 *            The graphics holding the last drawing
+	 * @return The bounds of the area drawn, or null if nothing was drawn
+	 */
+	public Rectangle renderChanges(Graphics2D g2D) {
+		CellStore store = graphMap.getStore();
+		if (drawnStore != store
+				|| drawnGeometry != graphMap.getGeometryVersion()
+				|| debug
+				&& glyphs.prepare(g2D, store.getDistances().getMaxDistance(),
+						glyphCells)) {
+			g2D.setColor(Color.WHITE);
+			g2D.fillRect(0, 0, graphMap.getPixelWidth(),
+					graphMap.getPixelHeight());
+			render(g2D);
+			return new Rectangle(0, 0, graphMap.getPixelWidth(),
+					graphMap.getPixelHeight());
+		}
+		Rectangle bounds = null;
+		for (int i = 0; i < store.getChangedCount(); i++) {
+			bounds = drawIfChanged(g2D, store, null, store.getChangedId(i),
+					bounds);
+		}
+		for (int i = 0; i < store.getFrameCount(); i++) {
+			bounds = drawIfChanged(g2D, store, null, store.getFrameId(i),
+					bounds);
+		}
+		store.clearChanges();
+		if (debug) {
+			DistanceField distances = store.getDistances();
+			distances.repairChanges();
+			for (int i = 0; i < distances.getUpdatedCount(); i++) {
+				bounds = drawIfChanged(g2D, store, null,
+						distances.getUpdatedId(i), bounds);
+			}
+			distances.clearUpdates();
+		}
+		return bounds;
+	}
+
+	/**
+	 * Draws only the cells of a snapshot that look different since the last
+	 * snapshot drawn. Only the snapshot's changed cells are checked, unless
+	 * snapshots were skipped since then. Never reads the map itself, so it
+	 * can run while the map updates.
+	 * 
+	 * @param g2D
+	 *            The graphics holding the last drawing
+	 * @param snapshot
+	 *            The latest snapshot of the map
+	 * @return The bounds of the area drawn, or null if nothing was drawn
+	 */
+	public Rectangle renderChanges(Graphics2D g2D, FrameSnapshot snapshot) {
+		CellStore store = snapshot.getStore();
+		if (store == null || snapshot.getTick() == drawnTick) {
+			return null;
+		}
+		Rectangle bounds = null;
+		if (drawnStore != store
+				|| drawnGeometry != snapshot.getGeometryVersion()
+				|| debug
+				&& glyphs.prepare(g2D, snapshot.getMaxDistance(), glyphCells)) {
+			g2D.setColor(Color.WHITE);
+			g2D.fillRect(0, 0, snapshot.getPixelWidth(),
+					snapshot.getPixelHeight());
+			drawAll(g2D, store, snapshot, snapshot.getGeometryVersion());
+			bounds = new Rectangle(0, 0, snapshot.getPixelWidth(),
+					snapshot.getPixelHeight());
+		} else {
+			bounds = drawChanges(g2D, store, snapshot);
+		}
+		drawnTick = snapshot.getTick();
+		return bounds;
+	}
+
+	/**
+	 * Draws the cells of a snapshot that look different since the last
+	 * snapshot drawn, checking every cell if snapshots were skipped.
+	 * 
+	 * @param g2D
+	 *            The graphics holding the last drawing
+	 * @param store
+	 *            The store holding the cells
+	 * @param snapshot
+	 *            The latest snapshot of the map
+	 * @return The bounds of the area drawn, or null if nothing was drawn
+	 */
+	private Rectangle drawChanges(Graphics2D g2D, CellStore store,
+			FrameSnapshot snapshot) {
+		Rectangle bounds = null;
+		if (snapshot.getBaseTick() < 0
+				|| snapshot.getBaseTick() > drawnTick) {
+			// Some changes were in snapshots that were skipped.
+			for (int id = 0; id < store.size(); id++) {
+				bounds = drawIfChanged(g2D, store, snapshot, id, bounds);
+			}
+		} else {
+			for (int i = 0; i < snapshot.getChangedCount(); i++) {
+				bounds = drawIfChanged(g2D, store, snapshot,
+						snapshot.getChangedId(i), bounds);
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * Makes the next call to renderChanges draw everything, for example
+	 * because the drawing was lost.
+	 */
+	public void invalidate() {
+		drawnStore = null;
+	}
+
+	/**
+	 * Draws every cell in id order.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 * @param store
+	 *            The store holding the cells
+	 * @param snapshot
+	 *            The snapshot to draw, or null to draw the store
+	 * @param geometry
+	 *            The geometry version of the map
+	 */
+	private void drawAll(Graphics2D g2D, CellStore store,
+			FrameSnapshot snapshot, int geometry) {
+		if (drawnColors.length != store.size()) {
+			drawnColors = new long[store.size()];
+			drawnDistances = new int[store.size()];
+		}
+		if (shapeStore != store || drawnGeometry != geometry) {
+			findShapes(store, geometry);
+		}
+		if (debug) {
+			glyphs.prepare(g2D, snapshot == null ? store.getDistances()
+					.getMaxDistance() : snapshot.getMaxDistance(), glyphCells);
+		}
+		for (int id = 0; id < store.size(); id++) {
+			drawCell(g2D, store, id, getDrawnColor(store, snapshot, id),
+					getDrawnDistance(store, snapshot, id));
+		}
+		drawnStore = store;
+	}
+
+	/**
+	 * Finds the shape, bounds and center of every cell's polygon, throwing
+	 * away the sprites of the old shapes. Polygons are created from the map
+	 * as they are needed and are not kept.
+	 * 
+	 * @param store
+	 *            The store holding the cells
+	 * @param geometry
+	 *            The geometry version of the map
+	 */
+	private void findShapes(CellStore store, int geometry) {
+		sprites.clear();
+		shapes = new int[store.size()];
+		originX = new int[store.size()];
+		originY = new int[store.size()];
+		centerX = new int[store.size()];
+		centerY = new int[store.size()];
+		widths = new int[store.size()];
+		heights = new int[store.size()];
+		glyphCells = new Polygon[0];
+		Polygon[] above = new Polygon[0];
+		for (int id = 0; id < store.size(); id++) {
+			Polygon polygon = getPolygon(store, id);
+			Rectangle bounds = polygon.getBounds();
+			int start = store.getNeighborStart(id);
+			int end = store.getNeighborEnd(id);
+			if (above.length < end - start) {
+				above = new Polygon[end - start];
+			}
+			// Only neighbors drawn after this cell can cover its edges.
+			int count = 0;
+			for (int i = start; i < end; i++) {
+				int neighbor = store.getNeighborId(i);
+				if (neighbor > id) {
+					Polygon other = getPolygon(store, neighbor);
+					if (other.getBounds().intersects(bounds)) {
+						above[count++] = other;
+					}
+				}
+			}
+			shapes[id] = sprites.getShape(polygon, above, count);
+			originX[id] = bounds.x;
+			originY[id] = bounds.y;
+			widths[id] = bounds.width;
+			heights[id] = bounds.height;
+			Point center = getCenter(polygon);
+			centerX[id] = center.x;
+			centerY[id] = center.y;
+			if (shapes[id] >= glyphCells.length) {
+				glyphCells = Arrays.copyOf(glyphCells, Math.max(
+						shapes[id] + 1, glyphCells.length * 2));
+			}
+			if (glyphCells[shapes[id]] == null) {
+				polygon.translate(-center.x, -center.y);
+				glyphCells[shapes[id]] = polygon;
+			}
+		}
+		shapeStore = store;
+		drawnGeometry = geometry;
+	}
+
+	/**
+	 * Draws a cell if its state's color, or in debug mode its distance, is
+	 * not the one last drawn.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 * @param store
+	 *            The store holding the cell
+	 * @param snapshot
+	 *            The snapshot to draw, or null to draw the store
+	 * @param id
+	 *            The id of the cell
+	 * @param bounds
+	 *            The bounds of the area drawn so far, or null
+	 * @return The bounds grown to cover the cell if it was drawn
+	 */
+	private Rectangle drawIfChanged(Graphics2D g2D, CellStore store,
+			FrameSnapshot snapshot, int id, Rectangle bounds) {
+		long color = getDrawnColor(store, snapshot, id);
+		int distance = getDrawnDistance(store, snapshot, id);
+		if (drawnColors[id] == color && drawnDistances[id] == distance) {
+			return bounds;
+		}
+		drawCell(g2D, store, id, color, distance);
+		if (bounds == null) {
+			return new Rectangle(originX[id], originY[id], widths[id],
+					heights[id]);
+		}
+		bounds.add(originX[id], originY[id]);
+		bounds.add(originX[id] + widths[id], originY[id] + heights[id]);
+		return bounds;
+	}
+
+	/**
+	 * Draws a cell's background, state and distance, and remembers the
+	 * state's color and the distance. Distances are sized to fit inside the
+	 * cell's polygon, so redrawing one cell never leaves part of another
+	 * cell's distance behind.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 * @param store
+	 *            The store holding the cell
+	 * @param id
+	 *            The id of the cell
+	 * @param drawnColor
+	 *            The state's color flagged with HAS_STATE, or NO_STATE
+	 * @param distance
+	 *            The distance to draw, or 0 for none
+	 */
+	private void drawCell(Graphics2D g2D, CellStore store, int id,
+			long drawnColor, int distance) {
+		int rgb = store.getColor(id).getRGB();
+		if (drawnColor != NO_STATE) {
+			rgb = blend(rgb, (int) drawnColor);
+		}
+		sprites.draw(g2D, shapes[id], rgb, originX[id], originY[id]);
+		drawnColors[id] = drawnColor;
+		drawnDistances[id] = distance;
+		if (distance > 0) {
+			glyphs.draw(g2D, distance, centerX[id], centerY[id]);
+		}
+	}
+
+	/**
+	 * Get the opaque color of a state's color drawn over a background.
+	 * Drawing one opaque color instead of two layers means a cell can be
+	 * drawn again without its translucent state building up at the edges.
+	 * 
+	 * @param background
+	 *            An opaque background color in ARGB
+	 * @param argb
+	 *            A state's color
+	 * @return The blended color in ARGB
+	 */
+	private int blend(int background, int argb) {
+		long key = ((long) background << 32) | (argb & 0xFFFFFFFFl);
+		int index = blends.indexOf(key);
+		if (index >= 0) {
+			return blends.valueAt(index);
+		}
+		float alpha = (argb >>> 24) / 255f;
+		int blended = 0xFF000000 | mix(background, argb, 16, alpha) << 16
+				| mix(background, argb, 8, alpha) << 8
+				| mix(background, argb, 0, alpha);
+		blends.put(key, blended);
+		return blended;
+	}
+
+	/**
+	 * Mixes one channel of two colors.
+	 * 
+	 * @param below
+	 *            The color underneath in ARGB
+	 * @param above
+	 *            The color on top in ARGB
+	 * @param shift
+	 *            The position of the channel's lowest bit
+	 * @param alpha
+	 *            The opacity of the color on top
+	 * @return The mixed channel
+	 */
+	private static int mix(int below, int above, int shift, float alpha) {
+		return Math.round(((above >> shift) & 0xFF) * alpha
+				+ ((below >> shift) & 0xFF) * (1 - alpha));
+	}
+
+	/**
+	 * Get the value remembered for drawing a cell's state.
+	 * 
+	 * @param store
+	 *            The store holding the cell
+	 * @param snapshot
+	 *            The snapshot to draw, or null to draw the store
+	 * @param id
+	 *            The id of the cell
+	 * @return The state's color flagged with HAS_STATE, or NO_STATE
+	 */
+	private static long getDrawnColor(CellStore store, FrameSnapshot snapshot,
+			int id) {
+		if (snapshot != null) {
+			if (snapshot.getCode(id) == CellStore.OPEN) {
+				return NO_STATE;
+			}
+			return HAS_STATE | (snapshot.getColor(id) & 0xFFFFFFFFl);
+		}
+		State state = store.getState(id);
+		if (state == null) {
+			return NO_STATE;
+		}
+		return HAS_STATE | (state.getColor().getRGB() & 0xFFFFFFFFl);
+	}
+
+	/**
+	 * Get the distance to draw for a cell.
+	 * 
+	 * @param store
+	 *            The store holding the cell
+	 * @param snapshot
+	 *            The snapshot to draw, or null to draw the store
+	 * @param id
+	 *            The id of the cell
+	 * @return The cell's distance in debug mode, otherwise 0
+	 */
+	private int getDrawnDistance(CellStore store, FrameSnapshot snapshot,
+			int id) {
+		if (!debug) {
+			return 0;
+		}
+		return snapshot == null ? store.getDistances().get(id) : snapshot
+				.getDistance(id);
+	}
+
+	/**
+	 * Create the polygon of a cell from its index in the map.
+	 * 
+	 * @param store
+	 *            The store holding the cell
+	 * @param id
+	 *            The id of the cell
+	 * @return A polygon positioned correctly for rendering
+	 */
+	private Polygon getPolygon(CellStore store, int id) {
+		int y = store.getY(id);
+		return graphMap.createPolygon(id - store.getId(0, y), y);
+	}
+
+	/**
+	 * Return the approximate center of a polygon. Note, for regular polygons
+	 * this should be the centroid.
+	 * 
+	 * @param p A polygon
+	 * @return A point containing the average of its x and y coordinates.
+	 */
+	private Point getCenter(Polygon p) {
+		int x = 0;
+		for (int i : p.xpoints) {
+			x += i;
+		}
+		x /= p.xpoints.length;
+		int y = 0;
+		for (int i : p.ypoints) {
+			y += i;
+		}
+		y /= p.ypoints.length;
+		return new Point(x, y);
+	}
+}
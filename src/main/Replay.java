@@ -0,0 +1,245 @@
+package main;
+
+import graph.CellStore;
+import graph.GraphMap;
+import graph.GraphMapFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A recorded game: the map file it was played on, the seed of Config.RANDOM,
+ * the cell the snakes moved toward on every tick, and a hash of the game when
+ * the recording ended. Since the mouse is the only input, this is enough to
+ * play the game again exactly, without a window and as fast as the map can
+ * update. Replays can compare how fast and how correctly two versions of the
+ * game play the same games.
+ * 
+ * <pre>
+ * For example: java main.Replay Arena.replay
+ * </pre>
+ * 
+ * @author Brian Nakayama
+ * @see main.Recorder
+ */
+public class Replay {
+
+	/**
+	 * The first four bytes of a replay file, "SNKR".
+	 */
+	public static final int MAGIC = 0x534E4B52;
+
+	/**
+	 * The version of the layout written by this class.
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * The location of the map file the game was played on.
+	 */
+	private String mapLocation;
+
+	/**
+	 * The seed of Config.RANDOM before the map was created.
+	 */
+	private long seed;
+
+	/**
+	 * The id of the cell the snakes moved toward on each tick.
+	 */
+	private int[] targets;
+
+	/**
+	 * The hash of the game after the last tick.
+	 * 
+	 * @see graph.CellStore#hashState()
+	 */
+	private long hash;
+
+	/**
+	 * Create a replay.
+	 * 
+	 * @param mapLocation
+	 *            The location of the map file the game was played on
+	 * @param seed
+	 *            The seed of Config.RANDOM before the map was created
+	 * @param targets
+	 *            The id of the cell the snakes moved toward on each tick
+	 * @param hash
+	 *            The hash of the game after the last tick
+	 */
+	public Replay(String mapLocation, long seed, int[] targets, long hash) {
+		this.mapLocation = mapLocation;
+		this.seed = seed;
+		this.targets = targets;
+		this.hash = hash;
+	}
+
+	/**
+	 * Reads a replay file.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @return The replay
+	 * @throws IOException
+	 *             If the file cannot be read or is not a replay
+	 */
+	public static Replay read(String location) throws IOException {
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(Paths.get(location))) {
+			in = ByteBuffer.allocate((int) channel.size());
+			while (in.hasRemaining() && channel.read(in) >= 0) {
+			}
+		}
+		in.flip();
+		if (in.remaining() < 6 || in.getInt() != MAGIC) {
+			throw new IOException(location + " is not a replay.");
+		}
+		short version = in.getShort();
+		if (version != VERSION) {
+			throw new IOException("Unable to read version " + version
+					+ " of a replay.");
+		}
+		byte[] name = new byte[in.getInt()];
+		in.get(name);
+		long seed = in.getLong();
+		long hash = in.getLong();
+		int[] targets = new int[in.getInt()];
+		in.asIntBuffer().get(targets);
+		return new Replay(new String(name, StandardCharsets.UTF_8), seed,
+				targets, hash);
+	}
+
+	/**
+	 * Writes this replay to a file, replacing the file if it exists.
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public void write(String location) throws IOException {
+		byte[] name = mapLocation.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer out = ByteBuffer.allocate(30 + name.length + 4
+				* targets.length);
+		out.putInt(MAGIC);
+		out.putShort(VERSION);
+		out.putInt(name.length);
+		out.put(name);
+		out.putLong(seed);
+		out.putLong(hash);
+		out.putInt(targets.length);
+		out.asIntBuffer().put(targets);
+		out.position(out.limit());
+		out.flip();
+		try (FileChannel channel = FileChannel.open(Paths.get(location),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+	}
+
+	/**
+	 * Creates the map the game was played on, the same way it was created
+	 * when the game was recorded.
+	 * 
+	 * @return The new map
+	 */
+	public GraphMap createGraphMap() {
+		Config.RANDOM.setSeed(seed);
+		return new GraphMapFactory(mapLocation).createGraphMap();
+	}
+
+	/**
+	 * Plays every recorded tick of the game on a map from createGraphMap().
+	 * 
+	 * @param map
+	 *            The map to play the game on
+	 */
+	public void play(GraphMap map) {
+		CellStore store = map.getStore();
+		for (int target : targets) {
+			map.updateTarget(store.getCell(target));
+			map.update();
+		}
+	}
+
+	/**
+	 * Get the location of the map file the game was played on.
+	 * 
+	 * @return The location of the map file
+	 */
+	public String getMapLocation() {
+		return mapLocation;
+	}
+
+	/**
+	 * Get the seed of Config.RANDOM before the map was created.
+	 * 
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Get the number of ticks recorded.
+	 * 
+	 * @return The number of ticks
+	 */
+	public int getTicks() {
+		return targets.length;
+	}
+
+	/**
+	 * Get the hash of the game after the last tick.
+	 * 
+	 * @return The hash
+	 * @see graph.CellStore#hashState()
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Plays replay files without a window as fast as possible, and checks
+	 * that each game ends as it was recorded. Exits with 1 if any does not.
+	 * 
+	 * @param args
+	 *            The replay files
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		boolean passed = true;
+		for (String location : args) {
+			Replay replay;
+			try {
+				replay = read(location);
+			} catch (IOException e) {
+				System.out.println(location + ": " + e.getMessage());
+				passed = false;
+				continue;
+			}
+			GraphMap map = replay.createGraphMap();
+			long start = System.nanoTime();
+			replay.play(map);
+			long millis = (System.nanoTime() - start) / 1000000;
+			long hash = map.getStore().hashState();
+			boolean matches = hash == replay.getHash();
+			passed &= matches;
+			System.out.println(location + ": " + replay.getTicks()
+					+ " ticks in " + millis + " ms, "
+					+ (matches ? "matches" : "DOES NOT MATCH")
+					+ " (hash " + hash + ")");
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package main;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws cells by copying pre-drawn sprites instead of filling polygons. Cells
+ * of a map only come in a few shapes, so each shape is filled once for each
+ * color it is drawn in, into one atlas image, and then copied wherever it is
+ * needed.
+ * <p>
+ * Neighboring polygons can share a row of pixels, which belongs to whichever
+ * cell is drawn last. A shape is therefore only the pixels a cell keeps after
+ * the cells drawn after it, so sprites can be copied in any order and still
+ * give the same picture as filling every polygon in id order.
+ * 
+ * @author Brian Nakayama
+ * @see main.Renderer
+ */
+public class SpriteCache {
+
+	/**
+	 * The most sprites kept in the atlas. When it is full, the atlas is
+	 * emptied and sprites are drawn again as they are needed.
+	 */
+	public static final int MAX_SPRITES = 4096;
+
+	/**
+	 * The number of sprites in a row of the atlas.
+	 */
+	private static final int ROW_LENGTH = 64;
+
+	/**
+	 * The index of each shape, keyed by the points of a polygon and the
+	 * polygons drawn over it, relative to its bounds.
+	 */
+	private Map<ShapeKey, Integer> shapeLookup = new HashMap<ShapeKey, Integer>();
+
+	/**
+	 * The pixels of each shape, one row after another.
+	 */
+	private List<boolean[]> masks = new ArrayList<boolean[]>();
+
+	/**
+	 * The width and height of each shape's pixels.
+	 */
+	private List<Dimension> maskSizes = new ArrayList<Dimension>();
+
+	/**
+	 * The slot of each sprite in the atlas, keyed by its shape and color.
+	 */
+	private LongIntTable sprites = new LongIntTable(MAX_SPRITES);
+
+	/**
+	 * The width and height of a slot, large enough for every shape.
+	 */
+	private int slotSize = 1;
+
+	/**
+	 * The image holding the sprites, or null until one is drawn.
+	 */
+	private BufferedImage atlas;
+
+	/**
+	 * Get the index of the shape of a polygon with other polygons drawn over
+	 * it, adding the shape if it is new.
+	 * 
+	 * @param polygon
+	 *            A polygon
+	 * @param above
+	 *            The polygons drawn after it that may overlap it
+	 * @param count
+	 *            The number of polygons in above
+	 * @return The index of its shape
+	 */
+	public int getShape(Polygon polygon, Polygon[] above, int count) {
+		Rectangle bounds = polygon.getBounds();
+		int length = 1 + polygon.npoints * 2;
+		for (int i = 0; i < count; i++) {
+			length += 1 + above[i].npoints * 2;
+		}
+		int[] points = new int[length];
+		int index = addPoints(points, 0, polygon, bounds);
+		for (int i = 0; i < count; i++) {
+			index = addPoints(points, index, above[i], bounds);
+		}
+		ShapeKey key = new ShapeKey(points);
+		Integer shape = shapeLookup.get(key);
+		if (shape == null) {
+			shape = masks.size();
+			int width = bounds.width + 1;
+			int height = bounds.height + 1;
+			maskSizes.add(new Dimension(width, height));
+			masks.add(createMask(polygon, above, count, bounds, width, height));
+			shapeLookup.put(key, shape);
+			if (width > slotSize || height > slotSize) {
+				// The sprites must be drawn again into larger slots.
+				slotSize = Math.max(width, height);
+				sprites.clear();
+				atlas = null;
+			}
+		}
+		return shape;
+	}
+
+	/**
+	 * Copies a polygon's points, relative to a position, into a key.
+	 * 
+	 * @param points
+	 *            The key
+	 * @param index
+	 *            The first free index of the key
+	 * @param polygon
+	 *            A polygon
+	 * @param origin
+	 *            The position the points are relative to
+	 * @return The next free index of the key
+	 */
+	private static int addPoints(int[] points, int index, Polygon polygon,
+			Rectangle origin) {
+		points[index++] = polygon.npoints;
+		for (int i = 0; i < polygon.npoints; i++) {
+			points[index++] = polygon.xpoints[i] - origin.x;
+			points[index++] = polygon.ypoints[i] - origin.y;
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the pixels a polygon keeps after other polygons are drawn over it.
+	 * 
+	 * @param polygon
+	 *            A polygon
+	 * @param above
+	 *            The polygons drawn after it
+	 * @param count
+	 *            The number of polygons in above
+	 * @param bounds
+	 *            The bounds of the polygon
+	 * @param width
+	 *            The width of the mask
+	 * @param height
+	 *            The height of the mask
+	 * @return The pixels of the shape
+	 */
+	private boolean[] createMask(Polygon polygon, Polygon[] above, int count,
+			Rectangle bounds, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.translate(-bounds.x, -bounds.y);
+		g.setColor(Color.WHITE);
+		g.fill(polygon);
+		g.setComposite(AlphaComposite.Clear);
+		for (int i = 0; i < count; i++) {
+			g.fill(above[i]);
+		}
+		g.dispose();
+		boolean[] mask = new boolean[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				mask[y * width + x] = image.getRGB(x, y) != 0;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Draws a shape in a color with its polygon's bounds at the given
+	 * position.
+	 * 
+	 * @param g2D
+	 *            The graphics to draw with
+	 * @param shape
+	 *            The index of a shape
+	 * @param rgb
+	 *            An opaque color in ARGB
+	 * @param x
+	 *            The x position of the polygon's bounds
+	 * @param y
+	 *            The y position of the polygon's bounds
+	 */
+	public void draw(Graphics2D g2D, int shape, int rgb, int x, int y) {
+		long key = ((long) shape << 32) | (rgb & 0xFFFFFFFFl);
+		int index = sprites.indexOf(key);
+		int slot;
+		if (index < 0) {
+			if (sprites.size() >= MAX_SPRITES) {
+				sprites.clear();
+			}
+			slot = addSprite(shape, rgb);
+			sprites.put(key, slot);
+		} else {
+			slot = sprites.valueAt(index);
+		}
+		int sx = (slot % ROW_LENGTH) * slotSize;
+		int sy = (slot / ROW_LENGTH) * slotSize;
+		g2D.drawImage(atlas, x, y, x + slotSize, y + slotSize, sx, sy, sx
+				+ slotSize, sy + slotSize, null);
+	}
+
+	/**
+	 * Draws a shape into the next free slot of the atlas, growing the atlas
+	 * if it is full.
+	 * 
+	 * @param shape
+	 *            The index of a shape
+	 * @param rgb
+	 *            An opaque color in ARGB
+	 * @return The slot of the new sprite
+	 */
+	private int addSprite(int shape, int rgb) {
+		int slot = sprites.size();
+		int rows = slot / ROW_LENGTH + 1;
+		if (atlas == null || atlas.getHeight() < rows * slotSize) {
+			int oldRows = atlas == null ? 0 : atlas.getHeight() / slotSize;
+			BufferedImage grown = new BufferedImage(ROW_LENGTH * slotSize,
+					Math.max(rows, 2 * oldRows) * slotSize,
+					BufferedImage.TYPE_INT_ARGB);
+			if (atlas != null) {
+				Graphics2D g = grown.createGraphics();
+				g.drawImage(atlas, 0, 0, null);
+				g.dispose();
+			}
+			atlas = grown;
+		}
+		int sx = (slot % ROW_LENGTH) * slotSize;
+		int sy = (slot / ROW_LENGTH) * slotSize;
+		boolean[] mask = masks.get(shape);
+		Dimension size = maskSizes.get(shape);
+		for (int y = 0; y < slotSize; y++) {
+			for (int x = 0; x < slotSize; x++) {
+				boolean set = x < size.width && y < size.height
+						&& mask[y * size.width + x];
+				atlas.setRGB(sx + x, sy + y, set ? rgb : 0);
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Forgets every shape and sprite, for example because the cells changed
+	 * size.
+	 */
+	public void clear() {
+		shapeLookup.clear();
+		masks.clear();
+		maskSizes.clear();
+		sprites.clear();
+		slotSize = 1;
+		atlas = null;
+	}
+
+	/**
+	 * The points of a polygon and the polygons drawn over it, for looking up
+	 * shapes.
+	 */
+	private static class ShapeKey {
+
+		/**
+		 * The number of points and the points of each polygon.
+		 */
+		private int[] points;
+
+		/**
+		 * The hash of the points.
+		 */
+		private int hash;
+
+		/**
+		 * Creates a key.
+		 * 
+		 * @param points
+		 *            The number of points and the points of each polygon
+		 */
+		private ShapeKey(int[] points) {
+			this.points = points;
+			this.hash = Arrays.hashCode(points);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof ShapeKey
+					&& Arrays.equals(points, ((ShapeKey) other).points);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package main;
+
+import java.awt.Point;
+
+/**
+ * Chooses where the mouse is on each tick of a game run without a window.
+ * 
+ * @author Brian Nakayama
+ * @see main.HeadlessRunner
+ */
+public interface TargetProvider {
+
+	/**
+	 * Get the position of the mouse for a tick.
+	 * 
+	 * @param tick
+	 *            The number of ticks run so far
+	 * @return The position in pixels, or null to leave the mouse where it is
+	 */
+	public Point getTarget(int tick);
+}
@@ -1,18 +1,18 @@
 package main;
 
-import graph.Cell;
+import graph.GameOverListener;
 import graph.GraphMap;
 
-import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.awt.image.VolatileImage;
 
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import clock.Updatable;
 
@@ -24,11 +24,6 @@ import clock.Updatable;
  */
 public class View extends JFrame implements Updatable {
 
-	/**
-	 * Toggles on and off the display of the mouseDistance for cells.
-	 */
-	private boolean debug;
-
 	/**
 	 * The following variable exists because JFrame is serializable.
 	 */
@@ -40,25 +35,26 @@ public class View extends JFrame implements Updatable {
 	private GraphMap graphMap;
 
 	/**
-	 * Draws the state(s) of the graphMap onto the screen.
+	 * Draws the cells of the graphMap.
 	 */
-	private Graphics graphics;
+	private Renderer renderer;
 
 	/**
-	 * An image for double buffering the screen. We render to this image first
-	 * before copying it to the screen.
+	 * Hands snapshots of the graphMap to this view, or null if this view
+	 * updates the graphMap itself.
 	 */
-	private VolatileImage image;
+	private FrameBuffer buffer;
 
 	/**
-	 * The x offset in pixels from which we should draw numbers for debug mode.
+	 * Draws the state(s) of the graphMap onto the screen.
 	 */
-	private int xOffset;
+	private Graphics graphics;
 
 	/**
-	 * The y offset in pixels from which we should draw numbers for debug mode.
+	 * An image for double buffering the screen. We render to this image first
+	 * before copying it to the screen.
 	 */
-	private int yOffset;
+	private VolatileImage image;
 
 	/**
 	 * Create a window for the view in pixel dimensions. Draws the given
@@ -74,22 +70,56 @@ public class View extends JFrame implements Updatable {
 	 *            If true, draws the mouseDistance for each Cell.
 	 */
 	public View(int width, int height, GraphMap graphMap, boolean debug) {
+		this(width, height, graphMap, debug, null);
+	}
+
+	/**
+	 * Create a window for the view in pixel dimensions. Draws the snapshots
+	 * of the given graphMap published by another thread.
+	 * 
+	 * @param width
+	 *            The width in pixels
+	 * @param height
+	 *            The height in pixels
+	 * @param graphMap
+	 *            The model to draw
+	 * @param debug
+	 *            If true, draws the mouseDistance for each Cell.
+	 * @param buffer
+	 *            Hands snapshots of the graphMap to this view, or null to
+	 *            update the graphMap in this view
+	 * @see main.FramePublisher
+	 */
+	public View(int width, int height, GraphMap graphMap, boolean debug,
+			FrameBuffer buffer) {
 		this.graphMap = graphMap;
-		this.debug = debug;
+		this.buffer = buffer;
+		this.renderer = new Renderer(graphMap, debug);
 
 		JPanel jp = new JPanel();
 		jp.setPreferredSize(new Dimension(width, height));
 		this.add(jp);
 		this.addMouseMotionListener(new Control(graphMap));
+		graphMap.setGameOverListener(new GameOverListener() {
+			@Override
+			public void gameOver(final int score) {
+				// Let the tick that ended the game finish before exiting.
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						JOptionPane.showMessageDialog(null,
+								"GAME OVER. Score: " + score);
+						System.exit(0);
+					}
+				});
+			}
+		});
 		this.pack();
 		this.setResizable(false);
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		this.setVisible(true);
 		image = this.createVolatileImage(width, height);
 		graphics = jp.getGraphics();
-		xOffset = graphics.getFontMetrics().stringWidth(
-				"" + Config.MAX_MOUSE_DISTANCE) / 2;
-		yOffset = graphics.getFontMetrics().getHeight() / 2;
 	}
 
 	/*
@@ -99,48 +129,24 @@ public class View extends JFrame implements Updatable {
 	 */
 	@Override
 	public void update() {
-		Graphics2D g2D = image.createGraphics();
-		g2D.setColor(Color.WHITE);
-		g2D.drawRect(0, 0, image.getWidth(), image.getHeight());
-		graphMap.update();
-		// graphMap.render(g2D);
-		for (Cell cell : graphMap) {
-			g2D.setColor(cell.getColor());
-			g2D.fill(cell.getPolygon());
-			if (cell.getState() != null) {
-				g2D.setColor(cell.getState().getColor());
-				g2D.fill(cell.getPolygon());
-			}
-			if (debug && cell.getMouseDistance() > 0) {
-				Point p = getCenter(cell.getPolygon());
-				g2D.setColor(Color.BLACK);
-				g2D.drawString("" + cell.getMouseDistance(), p.x - xOffset, p.y
-						+ yOffset);
-			}
+		if (image.validate(getGraphicsConfiguration()) != VolatileImage.IMAGE_OK) {
+			renderer.invalidate();
 		}
-		graphics.drawImage(image, 0, 0, null);
-		graphMap.clearAllDistances();
-	}
-
-	/**
-	 * Return the approximate center of a polygon. Note, for regular polygons
-	 * this should be the centroid.
-	 * 
-	 * @param p A polygon
-	 * @return A point containing the average of its x and y coordinates.
-	 */
-	private Point getCenter(Polygon p) {
-		int x = 0;
-		for (int i : p.xpoints) {
-			x += i;
+		Graphics2D g2D = image.createGraphics();
+		Rectangle dirty;
+		if (buffer == null) {
+			graphMap.update();
+			dirty = renderer.renderChanges(g2D);
+		} else {
+			dirty = renderer.renderChanges(g2D, buffer.getLatest());
 		}
-		x /= p.xpoints.length;
-		int y = 0;
-		for (int i : p.ypoints) {
-			y += i;
+		g2D.dispose();
+		if (dirty != null) {
+			// Only copy the area that was drawn to the screen.
+			graphics.drawImage(image, dirty.x, dirty.y, dirty.x + dirty.width,
+					dirty.y + dirty.height, dirty.x, dirty.y, dirty.x
+							+ dirty.width, dirty.y + dirty.height, null);
 		}
-		y /= p.ypoints.length;
-		return new Point(x, y);
 	}
 
 }
@@ -13,7 +13,7 @@ import main.Config;
  * @author Brian Nakayama
  * 
  */
-public class Food implements State {
+public class Food implements State, Savable {
 
 	/**
 	 * Keeps track of cycles for changing states.
@@ -50,6 +50,16 @@ public class Food implements State {
 		return true;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isStatic()
+	 */
+	@Override
+	public boolean isStatic() {
+		return false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -60,6 +70,26 @@ public class Food implements State {
 		return 'F';
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#save(state.StateWriter)
+	 */
+	@Override
+	public void save(StateWriter out) {
+		out.writeInt(counter);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#restore(state.StateReader)
+	 */
+	@Override
+	public void restore(StateReader in) {
+		counter = in.readInt();
+	}
+
 	/**
 	 * Gets the internal count of frames that controls the intensity of the
 	 * food's color.
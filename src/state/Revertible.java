@@ -0,0 +1,25 @@
+package state;
+
+import graph.Cell;
+
+/**
+ * A state that changes itself when it asks to move, and must undo those
+ * changes if a synchronous frame drops the move. States whose handle method
+ * only changes cells do not have to implement this.
+ * 
+ * @author Brian Nakayama
+ * @see graph.CellStore#commit(graph.ChangeLog...)
+ */
+public interface Revertible {
+
+	/**
+	 * Undoes what this state did to itself while it was handled in the
+	 * current frame, because another state won the cell it moved into. None
+	 * of the changes it asked for are written, so it is still in the same
+	 * cell.
+	 * 
+	 * @param cell
+	 *            The cell holding this state
+	 */
+	public void revert(Cell cell);
+}
@@ -0,0 +1,31 @@
+package state;
+
+/**
+ * A state whose data can be saved in a checkpoint and restored later. States
+ * without instance fields need nothing saved, and do not have to implement
+ * this. A restored state is first created with its constructor that takes
+ * no arguments, which may be private, and then given its data.
+ * 
+ * @author Brian Nakayama
+ * @see graph.Checkpoint
+ */
+public interface Savable {
+
+	/**
+	 * Writes the data of this state.
+	 * 
+	 * @param out
+	 *            Where to write the data
+	 */
+	public void save(StateWriter out);
+
+	/**
+	 * Reads the data written by save. Every state in the checkpoint has been
+	 * created by then, so references to other states can be read, but their
+	 * data may not have been restored yet.
+	 * 
+	 * @param in
+	 *            Where to read the data
+	 */
+	public void restore(StateReader in);
+}
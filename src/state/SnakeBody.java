@@ -0,0 +1,80 @@
+package state;
+
+import graph.Cell;
+
+import java.awt.Color;
+
+import main.Config;
+
+/**
+ * An impassable state for the cells a snake has passed through. It holds no
+ * data, so one instance is shared by every snake, and it is never updated.
+ * The snake's head keeps track of its body and removes it from the tail.
+ * 
+ * @author Brian Nakayama
+ * @see state.SnakeHead
+ * @see state.SnakeTail
+ */
+public class SnakeBody implements State {
+
+	/**
+	 * The instance shared by every snake.
+	 */
+	public static final SnakeBody INSTANCE = new SnakeBody();
+
+	/**
+	 * Use the shared instance.
+	 */
+	private SnakeBody() {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#handle(graph.Cell)
+	 */
+	@Override
+	public void handle(Cell cell) {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#getColor()
+	 */
+	@Override
+	public Color getColor() {
+		return Config.SNAKE_COLORS[Config.MAX_SNAKE_TIMER - 1];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isPassable()
+	 */
+	@Override
+	public boolean isPassable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isStatic()
+	 */
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#toChar()
+	 */
+	@Override
+	public char toChar() {
+		return 0;
+	}
+
+}
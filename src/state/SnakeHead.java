@@ -10,15 +10,29 @@ import main.Config;
 /**
  * An impassable state that follows the mouse's position or moves randomly if it
  * can't move towards the mouse. If it still cannot move, the game ends. If the
- * snake can move, it replaces its current cell with a SnakeSegment before
- * moving. If it finds Food, it increments its length. Uses the default snake
- * variables. An "S" in the map file.
+ * snake can move, it leaves its body in its current cell before moving. If it
+ * finds Food, it increments its length. Uses the default snake variables. An
+ * "S" in the map file.
+ * <p>
+ * The head keeps the cells of its body in a ring buffer, oldest first. Only
+ * the oldest cell holds a SnakeTail, which is updated every frame. It removes
+ * itself once its cell has been part of the body for the snake's length times
+ * MAX_SNAKE_TIMER frames, and passes the tail on to the next cell. The rest of
+ * the body is never updated, so a long snake costs no more than a short one.
+ * <p>
+ * The head and its tail may be updated by different tiles at the same time,
+ * so they share the body only under the head's lock, and in a way that does
+ * not depend on which runs first: the tail judges its age against the length
+ * the snake had when the frame started, and only passes itself on to a cell
+ * that was already part of the body then. The head only appends new cells and
+ * the tail only removes old ones, so their changes commute.
  * 
  * @author Brian Nakayama
- * @see state.SnakeSegment
+ * @see state.SnakeBody
+ * @see state.SnakeTail
  * @see state.Food
  */
-public class SnakeHead implements State, Snake {
+public class SnakeHead implements State, Snake, Savable, Revertible {
 
 	/**
 	 * Keeps track of cycles for changing states.
@@ -30,6 +44,42 @@ public class SnakeHead implements State, Snake {
 	 */
 	private int length = 4;
 
+	/**
+	 * The frame in which the snake last grew, or -1.
+	 */
+	private int grownFrame = -1;
+
+	/**
+	 * The cells of the body, oldest first, starting at bodyStart.
+	 */
+	private Cell[] body = new Cell[8];
+
+	/**
+	 * The frame in which the head left each cell of the body.
+	 */
+	private int[] bodyFrames = new int[8];
+
+	/**
+	 * The index of the oldest cell of the body.
+	 */
+	private int bodyStart = 0;
+
+	/**
+	 * The number of cells in the body.
+	 */
+	private int bodySize = 0;
+
+	/**
+	 * The state of the oldest cell of the body.
+	 */
+	private SnakeTail tail = new SnakeTail(this);
+
+	/**
+	 * The cell the head moved to in the current frame, or null if it did not
+	 * move.
+	 */
+	private Cell moved;
+
 	/**
 	 * Gets the length of the snake.
 	 * 
@@ -46,6 +96,7 @@ public class SnakeHead implements State, Snake {
 	 */
 	@Override
 	public void handle(Cell cell) {
+		moved = null;
 		timer += 1;
 		if (timer == Config.MAX_SNAKE_TIMER) {
 			timer = 0;
@@ -54,17 +105,120 @@ public class SnakeHead implements State, Snake {
 			if (next == null) {
 				next = cell.getRandomOpen();
 				if (next == null) {
-					Config.endGame(length);
+					cell.endGame(length);
+					return;
 				}
 			}
 			if (next.getState() instanceof Food) {
-				length += 1;
+				grow(cell);
 			}
 			cell.moveState(next);
-			cell.setState(new SnakeSegment(this));
-			cell = next;
+			cell.setState(addNewest(cell));
+			moved = next;
+
+		}
+	}
+
+	/**
+	 * Lengthens the snake by one cell in the current frame.
+	 * 
+	 * @param cell
+	 *            The cell holding the head
+	 */
+	private synchronized void grow(Cell cell) {
+		length += 1;
+		grownFrame = cell.getFrame();
+	}
 
+	/**
+	 * Adds the cell the head is leaving to the body.
+	 * 
+	 * @param cell
+	 *            The cell the head is leaving
+	 * @return The state to leave in the cell
+	 */
+	private synchronized State addNewest(Cell cell) {
+		if (bodySize == body.length) {
+			Cell[] cells = new Cell[body.length * 2];
+			int[] frames = new int[body.length * 2];
+			for (int i = 0; i < bodySize; i++) {
+				cells[i] = body[(bodyStart + i) % body.length];
+				frames[i] = bodyFrames[(bodyStart + i) % body.length];
+			}
+			body = cells;
+			bodyFrames = frames;
+			bodyStart = 0;
 		}
+		int index = (bodyStart + bodySize) % body.length;
+		body[index] = cell;
+		bodyFrames[index] = cell.getFrame();
+		bodySize++;
+		if (bodySize == 1) {
+			tail.setAge(0);
+			return tail;
+		}
+		return SnakeBody.INSTANCE;
+	}
+
+	/**
+	 * Forgets the cell most recently added to the body.
+	 */
+	private synchronized void removeNewest() {
+		bodySize--;
+		body[(bodyStart + bodySize) % body.length] = null;
+	}
+
+	/**
+	 * Ages the tail, and removes it once it has lasted as long as the snake
+	 * did at the start of the frame. The tail stays put if the next cell of
+	 * the body was only added in this frame, so the result is the same
+	 * whether or not the head has already moved.
+	 * 
+	 * @param cell
+	 *            The cell holding the tail
+	 */
+	synchronized void handleTail(Cell cell) {
+		if (bodySize == 0 || body[bodyStart] != cell) {
+			return;
+		}
+		int frame = cell.getFrame();
+		int age = frame - bodyFrames[bodyStart];
+		tail.setAge(age);
+		int startLength = grownFrame == frame ? length - 1 : length;
+		if (startLength * Config.MAX_SNAKE_TIMER - age > 0) {
+			return;
+		}
+		int next = (bodyStart + 1) % body.length;
+		if (bodySize < 2 || bodyFrames[next] == frame) {
+			return;
+		}
+		cell.setState(null);
+		body[bodyStart] = null;
+		bodyStart = next;
+		bodySize--;
+		tail.setAge(frame - bodyFrames[bodyStart]);
+		body[bodyStart].setState(tail);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Revertible#revert(graph.Cell)
+	 */
+	@Override
+	public synchronized void revert(Cell cell) {
+		if (moved == null) {
+			return;
+		}
+		// The move was dropped, so the food it would have eaten is still there.
+		if (moved.getState() instanceof Food) {
+			length -= 1;
+			grownFrame = -1;
+		}
+		removeNewest();
+		moved = null;
+		// Try to move again in the next frame.
+		timer = Config.MAX_SNAKE_TIMER - 1;
 	}
 
 	/*
@@ -87,6 +241,56 @@ public class SnakeHead implements State, Snake {
 		return false;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isStatic()
+	 */
+	@Override
+	public boolean isStatic() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#save(state.StateWriter)
+	 */
+	@Override
+	public synchronized void save(StateWriter out) {
+		out.writeInt(timer);
+		out.writeInt(length);
+		out.writeState(tail);
+		out.writeCell(moved);
+		out.writeInt(bodySize);
+		for (int i = 0; i < bodySize; i++) {
+			out.writeCell(body[(bodyStart + i) % body.length]);
+			out.writeInt(bodyFrames[(bodyStart + i) % body.length]);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#restore(state.StateReader)
+	 */
+	@Override
+	public synchronized void restore(StateReader in) {
+		timer = in.readInt();
+		length = in.readInt();
+		grownFrame = -1;
+		tail = (SnakeTail) in.readState();
+		moved = in.readCell();
+		bodySize = in.readInt();
+		bodyStart = 0;
+		body = new Cell[Math.max(8, bodySize * 2)];
+		bodyFrames = new int[body.length];
+		for (int i = 0; i < bodySize; i++) {
+			body[i] = in.readCell();
+			bodyFrames[i] = in.readInt();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,131 @@
+package state;
+
+import graph.Cell;
+
+import java.awt.Color;
+
+import main.Config;
+
+/**
+ * The last cell of a snake's body. Each snake has one tail, which moves up
+ * the body as the oldest cells are removed, and fades out over its last few
+ * frames.
+ * 
+ * @author Brian Nakayama
+ * @see state.SnakeHead
+ */
+public class SnakeTail implements State, Savable {
+
+	/**
+	 * The head that this tail "follows".
+	 */
+	private SnakeHead snakeHead;
+
+	/**
+	 * The number of frames since the snake's head left the tail's cell.
+	 */
+	private int age = 0;
+
+	/**
+	 * Creates the tail for a snake.
+	 * 
+	 * @param snakeHead
+	 *            The head of the snake
+	 */
+	public SnakeTail(SnakeHead snakeHead) {
+		this.snakeHead = snakeHead;
+	}
+
+	/**
+	 * Creates a tail to be restored from a checkpoint.
+	 */
+	private SnakeTail() {
+	}
+
+	/**
+	 * Set the number of frames since the snake's head left the tail's cell.
+	 * 
+	 * @param age
+	 *            The age in frames
+	 */
+	void setAge(int age) {
+		this.age = age;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#handle(graph.Cell)
+	 */
+	@Override
+	public void handle(Cell cell) {
+		snakeHead.handleTail(cell);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#getColor()
+	 */
+	@Override
+	public Color getColor() {
+		int timeLeft = snakeHead.getLength() * Config.MAX_SNAKE_TIMER - age;
+		if (timeLeft >= Config.MAX_SNAKE_TIMER) {
+			return Config.SNAKE_COLORS[Config.MAX_SNAKE_TIMER - 1];
+		}
+		return Config.SNAKE_COLORS[Math.max(timeLeft, 0)];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isPassable()
+	 */
+	@Override
+	public boolean isPassable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isStatic()
+	 */
+	@Override
+	public boolean isStatic() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#save(state.StateWriter)
+	 */
+	@Override
+	public void save(StateWriter out) {
+		out.writeState(snakeHead);
+		out.writeInt(age);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.Savable#restore(state.StateReader)
+	 */
+	@Override
+	public void restore(StateReader in) {
+		snakeHead = (SnakeHead) in.readState();
+		age = in.readInt();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#toChar()
+	 */
+	@Override
+	public char toChar() {
+		return 0;
+	}
+
+}
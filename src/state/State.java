@@ -39,6 +39,15 @@ public interface State {
 	 */
 	public boolean isPassable();
 
+	/**
+	 * Get whether or not handling this state can ever change anything. Cells
+	 * with static states are never updated.
+	 * 
+	 * @return true iff handle does nothing
+	 * @see #handle(Cell)
+	 */
+	public boolean isStatic();
+
 	/**
 	 * Get the character representation for this State. Used for loading map
 	 * text files.
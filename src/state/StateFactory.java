@@ -0,0 +1,18 @@
+package state;
+
+/**
+ * Creates the states for one character of a map file.
+ * 
+ * @author Brian Nakayama
+ * @see state.StateRegistry
+ */
+public interface StateFactory {
+
+	/**
+	 * Get a state to put in a cell. Stateless states may be shared, so the
+	 * same instance can be returned more than once.
+	 * 
+	 * @return A state
+	 */
+	public State create();
+}
@@ -0,0 +1,33 @@
+package state;
+
+import graph.Cell;
+
+/**
+ * Reads the data of a state from a checkpoint, in the order it was written.
+ * 
+ * @author Brian Nakayama
+ * @see state.Savable
+ */
+public interface StateReader {
+
+	/**
+	 * Reads a number.
+	 * 
+	 * @return The number
+	 */
+	public int readInt();
+
+	/**
+	 * Reads a reference to a cell.
+	 * 
+	 * @return A cell of the restored map, or null
+	 */
+	public Cell readCell();
+
+	/**
+	 * Reads a reference to a state.
+	 * 
+	 * @return The restored state, or null
+	 */
+	public State readState();
+}
@@ -0,0 +1,240 @@
+package state;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds a factory for each state character. Classes are looked at once when
+ * they are registered. A state without any instance fields cannot tell one
+ * cell from another, so a single instance of it is shared by every cell (the
+ * flyweight pattern). Other states are created with a constructor found at
+ * registration.
+ * 
+ * @author Brian Nakayama
+ * @see main.Config#getStates()
+ */
+public class StateRegistry {
+
+	/**
+	 * The characters that leave a cell empty in map files.
+	 */
+	public static final String EMPTY = "- ";
+
+	/**
+	 * The factory for each registered character.
+	 */
+	private Map<Character, StateFactory> factories = new HashMap<Character, StateFactory>();
+
+	/**
+	 * The class registered for each character.
+	 */
+	private Map<Character, Class<? extends State>> types = new HashMap<Character, Class<? extends State>>();
+
+	/**
+	 * Registers a state class under the character its instances return from
+	 * toChar().
+	 * 
+	 * @param clazz
+	 *            A state class with a public constructor that takes no
+	 *            arguments
+	 * @return The character the class was registered under
+	 */
+	public char register(Class<? extends State> clazz) {
+		try {
+			return register(clazz.getConstructor().newInstance());
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Unable to create instances for "
+					+ clazz.getName() + ".");
+		}
+	}
+
+	/**
+	 * Registers the class of a state under the character it returns from
+	 * toChar(). If the class has no instance fields, the state itself is
+	 * shared by every cell.
+	 * 
+	 * @param state
+	 *            An instance of a state class with a public constructor that
+	 *            takes no arguments
+	 * @return The character the class was registered under
+	 */
+	public char register(State state) {
+		Class<? extends State> clazz = state.getClass();
+		char c = state.toChar();
+		if (isStateless(clazz)) {
+			register(c, new SharedFactory(state));
+		} else {
+			try {
+				register(c, new ConstructorFactory(clazz.getConstructor()));
+			} catch (NoSuchMethodException e) {
+				throw new RuntimeException("Unable to create instances for "
+						+ clazz.getName() + ".");
+			}
+		}
+		types.put(c, clazz);
+		return c;
+	}
+
+	/**
+	 * Registers a factory for a character, replacing any factory or class
+	 * already registered for it.
+	 * 
+	 * @param c
+	 *            The character used in map files
+	 * @param factory
+	 *            Creates the states for the character
+	 */
+	public void register(char c, StateFactory factory) {
+		factories.put(c, factory);
+		types.remove(c);
+	}
+
+	/**
+	 * Get the factory for a character.
+	 * 
+	 * @param c
+	 *            The character used in map files
+	 * @return The factory, or null if nothing is registered for it
+	 */
+	public StateFactory get(char c) {
+		return factories.get(c);
+	}
+
+	/**
+	 * Get the factory for a character read from a map file. A state missing
+	 * from META-INF/services/state.State would otherwise leave its cells
+	 * empty without a word, so a character that is neither registered nor
+	 * one of the EMPTY characters is an error.
+	 * 
+	 * @param c
+	 *            The character used in map files
+	 * @return The factory, or null if the character leaves the cell empty
+	 */
+	public StateFactory getForMap(char c) {
+		StateFactory factory = factories.get(c);
+		if (factory == null && EMPTY.indexOf(c) < 0) {
+			throw new RuntimeException("No state is registered for '" + c
+					+ "'. State classes must be listed in "
+					+ "META-INF/services/state.State.");
+		}
+		return factory;
+	}
+
+	/**
+	 * Get the class registered for a character.
+	 * 
+	 * @param c
+	 *            The character used in map files
+	 * @return The class, or null if no class is registered for it
+	 */
+	public Class<? extends State> getType(char c) {
+		return types.get(c);
+	}
+
+	/**
+	 * Get the instance of a stateless class that every cell shares.
+	 * 
+	 * @param clazz
+	 *            A state class
+	 * @return The shared instance, or null if the class is not registered or
+	 *         has instance fields
+	 */
+	public State getShared(Class<? extends State> clazz) {
+		for (Map.Entry<Character, Class<? extends State>> entry : types
+				.entrySet()) {
+			StateFactory factory = factories.get(entry.getKey());
+			if (entry.getValue() == clazz && factory instanceof SharedFactory) {
+				return factory.create();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get whether a class and its super classes have no instance fields.
+	 * 
+	 * @param clazz
+	 *            A state class
+	 * @return true iff every instance of the class behaves the same
+	 */
+	public static boolean isStateless(Class<?> clazz) {
+		for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hands out the same instance of a stateless state every time.
+	 */
+	private static class SharedFactory implements StateFactory {
+
+		/**
+		 * The shared state.
+		 */
+		private State state;
+
+		/**
+		 * Creates a factory for a shared state.
+		 * 
+		 * @param state
+		 *            A state without instance fields
+		 */
+		private SharedFactory(State state) {
+			this.state = state;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateFactory#create()
+		 */
+		@Override
+		public State create() {
+			return state;
+		}
+	}
+
+	/**
+	 * Creates a new state for every call with a constructor found once.
+	 */
+	private static class ConstructorFactory implements StateFactory {
+
+		/**
+		 * The constructor taking no arguments.
+		 */
+		private Constructor<? extends State> constructor;
+
+		/**
+		 * Creates a factory for a state class.
+		 * 
+		 * @param constructor
+		 *            The constructor taking no arguments
+		 */
+		private ConstructorFactory(Constructor<? extends State> constructor) {
+			this.constructor = constructor;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see state.StateFactory#create()
+		 */
+		@Override
+		public State create() {
+			try {
+				return constructor.newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new RuntimeException("Unable to create an instance for "
+						+ constructor.getDeclaringClass().getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package state;
+
+import graph.Cell;
+
+/**
+ * Writes the data of a state to a checkpoint.
+ * 
+ * @author Brian Nakayama
+ * @see state.Savable
+ */
+public interface StateWriter {
+
+	/**
+	 * Writes a number.
+	 * 
+	 * @param value
+	 *            The number
+	 */
+	public void writeInt(int value);
+
+	/**
+	 * Writes a reference to a cell.
+	 * 
+	 * @param cell
+	 *            A cell of the map being saved, or null
+	 */
+	public void writeCell(Cell cell);
+
+	/**
+	 * Writes a reference to a state. The state is saved as well, even if no
+	 * cell holds it.
+	 * 
+	 * @param state
+	 *            A state, or null
+	 */
+	public void writeState(State state);
+}
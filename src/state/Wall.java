@@ -42,6 +42,16 @@ public class Wall implements State {
 		return false;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see state.State#isStatic()
+	 */
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 